@@ -21,7 +21,8 @@ CREATE TABLE users
     email     VARCHAR(255) NOT NULL,
     PRIMARY KEY (id),
     UNIQUE KEY uk_users_username (username),
-    UNIQUE KEY uk_users_email (email)
+    UNIQUE KEY uk_users_email (email),
+    FULLTEXT KEY ft_users_search (username, firstname, lastname, email)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
 -- books
@@ -34,12 +35,25 @@ CREATE TABLE books
     published_at INT          NOT NULL,
     publisher    VARCHAR(255) NOT NULL,
     language     VARCHAR(32)  NOT NULL,
-    description  TEXT         NOT NULL,
     pages        INT          NOT NULL,
+    updated_at   TIMESTAMP(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6),
     PRIMARY KEY (id),
-    KEY          idx_books_isbn(isbn)
+    UNIQUE KEY   uk_books_isbn(isbn),
+    KEY          idx_books_updated_at(updated_at),
+    FULLTEXT KEY ft_books_search(title, author, isbn)
 ) ENGINE=InnoDB  DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
+-- Beschreibungen getrennt von den Stammdaten, damit die Zeilen von books klein bleiben.
+-- Gelesen wird eine Beschreibung nur für die Detailansicht eines Buchs.
+CREATE TABLE book_descriptions
+(
+    book_id     BIGINT       NOT NULL,
+    description TEXT         NOT NULL,
+    updated_at  TIMESTAMP(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6),
+    PRIMARY KEY (book_id),
+    CONSTRAINT fk_book_descriptions_book FOREIGN KEY (book_id) REFERENCES books (id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
 -- loans
 CREATE TABLE loans
 (
@@ -48,8 +62,12 @@ CREATE TABLE loans
     book_id     BIGINT       NOT NULL,
     borrowed_at TIMESTAMP(6) NOT NULL,
     returned_at TIMESTAMP(6) NULL,
+    -- book_id solange die Ausleihe aktiv ist, sonst NULL: höchstens eine aktive Ausleihe pro Buch
+    active_book_id BIGINT AS (IF(returned_at IS NULL, book_id, NULL)) STORED,
     PRIMARY KEY (id),
-    KEY         idx_loans_user(user_id),
+    UNIQUE KEY  uk_loans_active_book(active_book_id),
+    -- Ausleih-Verlauf eines Benutzers: Filter aktiv/zurückgegeben, Zeitraum und Sortierung über borrowed_at
+    KEY         idx_loans_user_history(user_id, returned_at, borrowed_at),
     KEY         idx_loans_book(book_id),
     CONSTRAINT fk_loans_user FOREIGN KEY (user_id) REFERENCES users (id),
     CONSTRAINT fk_loans_book FOREIGN KEY (book_id) REFERENCES books (id)
@@ -64,17 +82,29 @@ VALUES (1, 'demo_user_1', 'Demo', 'Eins', 'demo1@example.test'),
        (4, 'librarian', 'The', 'Librarian', 'librarian@example.test');
 
 -- books
-INSERT INTO books (id, isbn, title, author, published_at, publisher, language, description, pages)
-VALUES (1001, '9780132350884', 'Clean Code', 'Robert C. Martin', 2008, 'Prentice Hall', 'EN', 'Beschreibung Clean Code', 464),
-       (1002, '9780134685991', 'Effective Java', 'Joshua Bloch', 2018, 'Addison-Wesley', 'EN', 'Beschreibung Effective Java', 416),
-       (1003, '9780201633610', 'Design Patterns', 'Gamma; Helm; Johnson; Vlissides', 1994, 'Addison-Wesley', 'EN', 'Beschreibung Design Patterns', 395),
-       (1004, '9780134757599', 'Refactoring', 'Martin Fowler', 2018, 'Addison-Wesley', 'EN', 'Beschreibung Refactoring', 448),
-       (1005, '9780321125217', 'Domain-Driven Design', 'Eric Evans', 2003, 'Addison-Wesley', 'EN', 'Beschreibung DDD', 560),
-       (1006, '9780134494166', 'Clean Architecture', 'Robert C. Martin', 2017, 'Prentice Hall', 'EN', 'Beschreibung Clean Architecture', 432),
-       (1007, '9780135957059', 'The Pragmatic Programmer', 'Andrew Hunt; David Thomas', 2019, 'Addison-Wesley', 'EN', 'Beschreibung Pragmatic Programmer', 352),
-       (1008, '9780596007126', 'Head First Design Patterns', 'Eric Freeman; Elisabeth Robson', 2004, 'O''Reilly Media', 'EN', 'Beschreibung HFDP', 694),
-       (1009, '9780321349606', 'Java Concurrency in Practice', 'Brian Goetz; et al.', 2006, 'Addison-Wesley', 'EN', 'Beschreibung JCIP', 384),
-       (1010, '9781617294945', 'Spring in Action', 'Craig Walls', 2018, 'Manning', 'EN', 'Beschreibung Spring in Action', 520);
+INSERT INTO books (id, isbn, title, author, published_at, publisher, language, pages)
+VALUES (1001, '9780132350884', 'Clean Code', 'Robert C. Martin', 2008, 'Prentice Hall', 'EN', 464),
+       (1002, '9780134685991', 'Effective Java', 'Joshua Bloch', 2018, 'Addison-Wesley', 'EN', 416),
+       (1003, '9780201633610', 'Design Patterns', 'Gamma; Helm; Johnson; Vlissides', 1994, 'Addison-Wesley', 'EN', 395),
+       (1004, '9780134757599', 'Refactoring', 'Martin Fowler', 2018, 'Addison-Wesley', 'EN', 448),
+       (1005, '9780321125217', 'Domain-Driven Design', 'Eric Evans', 2003, 'Addison-Wesley', 'EN', 560),
+       (1006, '9780134494166', 'Clean Architecture', 'Robert C. Martin', 2017, 'Prentice Hall', 'EN', 432),
+       (1007, '9780135957059', 'The Pragmatic Programmer', 'Andrew Hunt; David Thomas', 2019, 'Addison-Wesley', 'EN', 352),
+       (1008, '9780596007126', 'Head First Design Patterns', 'Eric Freeman; Elisabeth Robson', 2004, 'O''Reilly Media', 'EN', 694),
+       (1009, '9780321349606', 'Java Concurrency in Practice', 'Brian Goetz; et al.', 2006, 'Addison-Wesley', 'EN', 384),
+       (1010, '9781617294945', 'Spring in Action', 'Craig Walls', 2018, 'Manning', 'EN', 520);
+
+INSERT INTO book_descriptions (book_id, description)
+VALUES (1001, 'Beschreibung Clean Code'),
+       (1002, 'Beschreibung Effective Java'),
+       (1003, 'Beschreibung Design Patterns'),
+       (1004, 'Beschreibung Refactoring'),
+       (1005, 'Beschreibung DDD'),
+       (1006, 'Beschreibung Clean Architecture'),
+       (1007, 'Beschreibung Pragmatic Programmer'),
+       (1008, 'Beschreibung HFDP'),
+       (1009, 'Beschreibung JCIP'),
+       (1010, 'Beschreibung Spring in Action');
 
 -- loans
 -- Einige aktive Ausleihen (returnedAt IS NULL) + eine zurückgegebene
@@ -0,0 +1,26 @@
+-- Migration bestehender Datenbanken: books.description wird in die Tabelle book_descriptions verschoben.
+-- Neue Datenbanken werden von mysql-init/library_schema.sql bereits so angelegt, dort ist nichts zu tun.
+--
+-- Einmalig ausführen, z.B.:
+--   docker exec -i mysql mysql -uadmin -ppwd library < docker/mysql-migrations/001_book_descriptions.sql
+
+USE library;
+
+CREATE TABLE IF NOT EXISTS book_descriptions
+(
+    book_id     BIGINT       NOT NULL,
+    description TEXT         NOT NULL,
+    updated_at  TIMESTAMP(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6),
+    PRIMARY KEY (book_id),
+    CONSTRAINT fk_book_descriptions_book FOREIGN KEY (book_id) REFERENCES books (id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- nach einem Abbruch erneut startbar, solange books.description noch existiert
+-- updated_at erhält den Zeitpunkt der Migration, books.updated_at gibt es vor 005_books_updated_at.sql noch nicht
+-- abgeleitete Tabelle statt des seit MySQL 8.0.20 veralteten VALUES(description)
+INSERT INTO book_descriptions (book_id, description)
+SELECT *
+FROM (SELECT id, description FROM books) AS new
+ON DUPLICATE KEY UPDATE description = new.description;
+
+ALTER TABLE books DROP COLUMN description;
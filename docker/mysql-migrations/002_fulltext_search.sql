@@ -0,0 +1,14 @@
+-- Migration bestehender Datenbanken: FULLTEXT-Indexe für library.search.mode=fulltext.
+-- Neue Datenbanken werden von mysql-init/library_schema.sql bereits so angelegt, dort ist nichts zu tun.
+--
+-- Einmalig ausführen, z.B.:
+--   docker exec -i mysql mysql -uadmin -ppwd library < docker/mysql-migrations/002_fulltext_search.sql
+--
+-- Der erste FULLTEXT-Index einer Tabelle baut sie neu auf (verborgene Spalte FTS_DOC_ID), bei großen Tabellen
+-- außerhalb der Hauptlast ausführen.
+
+USE library;
+
+ALTER TABLE users ADD FULLTEXT KEY ft_users_search (username, firstname, lastname, email);
+
+ALTER TABLE books ADD FULLTEXT KEY ft_books_search (title, author, isbn);
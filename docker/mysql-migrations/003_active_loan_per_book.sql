@@ -0,0 +1,22 @@
+-- Migration bestehender Datenbanken: höchstens eine aktive Ausleihe pro Buch, erzwungen über uk_loans_active_book.
+-- Neue Datenbanken werden von mysql-init/library_schema.sql bereits so angelegt, dort ist nichts zu tun.
+--
+-- Einmalig ausführen, z.B.:
+--   docker exec -i mysql mysql -uadmin -ppwd library < docker/mysql-migrations/003_active_loan_per_book.sql
+--
+-- Ohne den Unique Key sind parallele Ausleihen desselben Buchs nicht geschützt und die Validierung
+-- der Entities (ddl-auto: validate) schlägt fehl.
+
+USE library;
+
+-- Doppelte aktive Ausleihen schließen: pro Buch bleibt die früheste aktiv, die übrigen gelten als sofort zurückgegeben.
+UPDATE loans l
+    JOIN loans first ON first.book_id = l.book_id
+        AND first.returned_at IS NULL
+        AND (first.borrowed_at < l.borrowed_at OR (first.borrowed_at = l.borrowed_at AND first.id < l.id))
+SET l.returned_at = l.borrowed_at
+WHERE l.returned_at IS NULL;
+
+ALTER TABLE loans
+    ADD COLUMN active_book_id BIGINT AS (IF(returned_at IS NULL, book_id, NULL)) STORED,
+    ADD UNIQUE KEY uk_loans_active_book (active_book_id);
@@ -0,0 +1,51 @@
+-- Migration bestehender Datenbanken: isbn wird eindeutig (uk_books_isbn statt idx_books_isbn).
+-- Neue Datenbanken werden von mysql-init/library_schema.sql bereits so angelegt, dort ist nichts zu tun.
+--
+-- Einmalig ausführen, z.B.:
+--   docker exec -i mysql mysql -uadmin -ppwd library < docker/mysql-migrations/004_unique_book_isbn.sql
+--
+-- Der Import (ON DUPLICATE KEY UPDATE) erkennt vorhandene Bücher nur über den Unique Key, ohne ihn legt er Duplikate an.
+-- Bestehende Duplikate werden zusammengeführt: pro isbn bleibt das Buch mit der kleinsten id, die Ausleihen der
+-- übrigen werden auf dieses umgehängt. Backend danach neu starten, damit Caches und Suchindex neu geladen werden.
+
+USE library;
+
+-- alle Bücher mit mehrfach vorhandener isbn und das Buch, das jeweils erhalten bleibt
+CREATE TABLE migration_book_isbn_duplicates
+(
+    book_id BIGINT NOT NULL,
+    keep_id BIGINT NOT NULL,
+    PRIMARY KEY (book_id),
+    KEY idx_keep (keep_id)
+) ENGINE=InnoDB;
+
+INSERT INTO migration_book_isbn_duplicates (book_id, keep_id)
+SELECT b.id, k.keep_id
+FROM books b
+         JOIN (SELECT isbn, MIN(id) AS keep_id FROM books GROUP BY isbn HAVING COUNT(*) > 1) k ON k.isbn = b.isbn;
+
+-- nach dem Umhängen darf pro isbn nur eine Ausleihe aktiv sein (uk_loans_active_book),
+-- die früheste bleibt aktiv, die übrigen gelten als sofort zurückgegeben
+UPDATE loans l
+    JOIN migration_book_isbn_duplicates d ON d.book_id = l.book_id
+    JOIN migration_book_isbn_duplicates same_isbn ON same_isbn.keep_id = d.keep_id
+    JOIN loans first ON first.book_id = same_isbn.book_id
+        AND first.returned_at IS NULL
+        AND (first.borrowed_at < l.borrowed_at OR (first.borrowed_at = l.borrowed_at AND first.id < l.id))
+SET l.returned_at = l.borrowed_at
+WHERE l.returned_at IS NULL;
+
+UPDATE loans l
+    JOIN migration_book_isbn_duplicates d ON d.book_id = l.book_id AND d.book_id <> d.keep_id
+SET l.book_id = d.keep_id;
+
+-- Beschreibungen der entfernten Bücher werden über fk_book_descriptions_book mitgelöscht
+DELETE b
+FROM books b
+         JOIN migration_book_isbn_duplicates d ON d.book_id = b.id AND d.book_id <> d.keep_id;
+
+DROP TABLE migration_book_isbn_duplicates;
+
+ALTER TABLE books
+    DROP KEY idx_books_isbn,
+    ADD UNIQUE KEY uk_books_isbn (isbn);
@@ -0,0 +1,13 @@
+-- Migration bestehender Datenbanken: books.updated_at für den Export geänderter Bücher (since).
+-- Neue Datenbanken werden von mysql-init/library_schema.sql bereits so angelegt, dort ist nichts zu tun.
+--
+-- Einmalig ausführen, z.B.:
+--   docker exec -i mysql mysql -uadmin -ppwd library < docker/mysql-migrations/005_books_updated_at.sql
+--
+-- Bestehende Bücher erhalten den Zeitpunkt der Migration, ein Export mit since davor enthält daher alle Bücher.
+
+USE library;
+
+ALTER TABLE books
+    ADD COLUMN updated_at TIMESTAMP(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6) AFTER pages,
+    ADD KEY idx_books_updated_at (updated_at);
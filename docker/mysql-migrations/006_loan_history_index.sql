@@ -0,0 +1,12 @@
+-- Migration bestehender Datenbanken: idx_loans_user_history ersetzt idx_loans_user für den Ausleih-Verlauf.
+-- Neue Datenbanken werden von mysql-init/library_schema.sql bereits so angelegt, dort ist nichts zu tun.
+--
+-- Einmalig ausführen, z.B.:
+--   docker exec -i mysql mysql -uadmin -ppwd library < docker/mysql-migrations/006_loan_history_index.sql
+
+USE library;
+
+-- in einem Schritt, fk_loans_user braucht durchgehend einen Index, der mit user_id beginnt
+ALTER TABLE loans
+    ADD KEY idx_loans_user_history (user_id, returned_at, borrowed_at),
+    DROP KEY idx_loans_user;
@@ -0,0 +1,123 @@
+package org.kergru.library.books.export;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import javax.sql.DataSource;
+import org.kergru.library.loans.service.BookAvailability;
+import org.kergru.library.model.BookDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Writes all books with their loan status as NDJSON, one {@link BookDto} per line.
+ * <p>
+ * The books are read with a forward-only streaming result set (fetch size Integer.MIN_VALUE for MySQL),
+ * rows are written as they arrive and never collected, so memory stays flat for any catalog size.
+ * The loan status is taken from {@link BookAvailability}, the connection is busy with the stream.
+ * <p>
+ * An export with since may contain books already exported before, see {@link #nextSince()}, consumers have to
+ * tolerate duplicates.
+ */
+@Service
+public class BookExporter {
+
+  private static final String SELECT = """
+      SELECT b.id, b.isbn, b.title, b.author, b.published_at, b.publisher, b.language, b.pages,
+             COALESCE(d.description, '') AS description
+      FROM books b
+      LEFT JOIN book_descriptions d ON d.book_id = b.id
+      """;
+
+  // books changed since, including books borrowed or returned since, as the loan status is part of the export
+  private static final String SELECT_SINCE = SELECT + """
+      WHERE b.updated_at > ?
+         OR d.updated_at > ?
+         OR b.id IN (SELECT book_id FROM loans WHERE borrowed_at > ? OR returned_at > ?)
+      """;
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final JdbcTemplate jdbcTemplate;
+
+  private final JdbcTemplate streamingJdbcTemplate;
+
+  private final ObjectMapper objectMapper;
+
+  private final BookAvailability bookAvailability;
+
+  private final Duration sinceOverlap;
+
+  public BookExporter(
+      DataSource dataSource,
+      JdbcTemplate jdbcTemplate,
+      ObjectMapper objectMapper,
+      BookAvailability bookAvailability,
+      @Value("${library.export.since-overlap:1m}") Duration sinceOverlap) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+    this.streamingJdbcTemplate.setFetchSize(Integer.MIN_VALUE);
+    this.objectMapper = objectMapper;
+    this.bookAvailability = bookAvailability;
+    this.sinceOverlap = sinceOverlap;
+  }
+
+  /**
+   * The since to pass with the next export, to be taken before the export starts.
+   * <p>
+   * updated_at is set by the database when a statement runs, not when it commits, so a change committed after the
+   * export has started may carry an older timestamp. Taking the time of the database, not of this instance, minus
+   * library.export.since-overlap covers transactions and clock skew shorter than the overlap, borrowed_at and
+   * returned_at are set by the backend instances. Books changed within the overlap are exported again.
+   */
+  public Instant nextSince() {
+    return jdbcTemplate.queryForObject("SELECT CURRENT_TIMESTAMP(6)", Timestamp.class).toInstant().minus(sinceOverlap);
+  }
+
+  /**
+   * Exports all books, or only the books changed after since if not null.
+   *
+   * @return the number of exported books
+   */
+  public long export(Instant since, OutputStream out) throws IOException {
+    long start = System.currentTimeMillis();
+    long[] count = {0};
+    try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+      generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      generator.setRootValueSeparator(null);
+
+      Timestamp sinceTimestamp = since == null ? null : Timestamp.from(since);
+      Object[] args = since == null ? new Object[0] : new Object[] {sinceTimestamp, sinceTimestamp, sinceTimestamp, sinceTimestamp};
+      streamingJdbcTemplate.query(since == null ? SELECT + "ORDER BY b.id" : SELECT_SINCE + "ORDER BY b.id", rs -> {
+        long id = rs.getLong("id");
+        BookDto book = new BookDto(
+            rs.getString("isbn"),
+            rs.getString("title"),
+            rs.getString("author"),
+            rs.getInt("published_at"),
+            rs.getString("publisher"),
+            rs.getString("language"),
+            rs.getInt("pages"),
+            rs.getString("description"),
+            bookAvailability.loanStatus(id));
+        try {
+          generator.writeObject(book);
+          generator.writeRaw('\n');
+        } catch (IOException e) {
+          throw new UncheckedIOException(e); // client went away, aborts the query
+        }
+        count[0]++;
+      }, args);
+    }
+    logger.info("Exported {} books in {} ms", count[0], System.currentTimeMillis() - start);
+    return count[0];
+  }
+}
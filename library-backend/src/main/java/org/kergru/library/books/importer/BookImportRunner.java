@@ -0,0 +1,35 @@
+package org.kergru.library.books.importer;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Command line import of a CSV or NDJSON file at startup, e.g.
+ * java -jar library-backend.jar --spring.main.web-application-type=none --library.import.file=books.csv
+ */
+@Component
+@ConditionalOnProperty("library.import.file")
+public class BookImportRunner implements ApplicationRunner {
+
+  private final BookImporter bookImporter;
+
+  private final Path file;
+
+  public BookImportRunner(BookImporter bookImporter, @Value("${library.import.file}") Path file) {
+    this.bookImporter = bookImporter;
+    this.file = file;
+  }
+
+  @Override
+  public void run(ApplicationArguments args) throws Exception {
+    try (InputStream in = Files.newInputStream(file)) {
+      bookImporter.importBooks(in, BookImporter.Format.ofFileName(file.getFileName().toString()));
+    }
+  }
+}
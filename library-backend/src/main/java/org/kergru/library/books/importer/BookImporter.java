@@ -0,0 +1,231 @@
+package org.kergru.library.books.importer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import org.kergru.library.books.repository.CatalogReloadedEvent;
+import org.kergru.library.model.BookDto;
+import org.kergru.library.model.BookImportResultDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Streams CSV or NDJSON records of the {@link BookDto} shape into the books and book_descriptions tables.
+ * <p>
+ * Records are written with JDBC batches of library.import.batch-size rows, each batch is committed on its own,
+ * so the import never holds more than one batch in memory. Books with an existing isbn are updated.
+ * The descriptions are written by a second batch in the same transaction, looking up the book id by isbn.
+ * Invalid records are rejected and counted, if a batch fails anyway, its rows are written one by one,
+ * so a single bad record never rolls back the valid ones or ends the import.
+ * The batch insert bypasses JPA, a {@link CatalogReloadedEvent} is published at the end instead.
+ * The upserts use the row alias of MySQL 8.0.19+, VALUES(col) is deprecated and warns on every statement.
+ */
+@Service
+public class BookImporter {
+
+  private static final String UPSERT = """
+      INSERT INTO books (isbn, title, author, published_at, publisher, language, pages)
+      VALUES (?, ?, ?, ?, ?, ?, ?) AS new
+      ON DUPLICATE KEY UPDATE
+          title = new.title,
+          author = new.author,
+          published_at = new.published_at,
+          publisher = new.publisher,
+          language = new.language,
+          pages = new.pages
+      """;
+
+  private static final String UPSERT_DESCRIPTION = """
+      INSERT INTO book_descriptions (book_id, description)
+      VALUES ((SELECT id FROM books WHERE isbn = ?), ?) AS new
+      ON DUPLICATE KEY UPDATE description = new.description
+      """;
+
+  private static final long PROGRESS_INTERVAL_MILLIS = 5_000;
+
+  private static final int MAX_LOGGED_REJECTS = 100;
+
+  private static final int MAX_DESCRIPTION_BYTES = 65_535; // TEXT
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final JdbcTemplate jdbcTemplate;
+
+  private final TransactionTemplate transactionTemplate;
+
+  private final ObjectMapper objectMapper;
+
+  private final ApplicationEventPublisher eventPublisher;
+
+  private final int batchSize;
+
+  public BookImporter(
+      JdbcTemplate jdbcTemplate,
+      PlatformTransactionManager transactionManager,
+      ObjectMapper objectMapper,
+      ApplicationEventPublisher eventPublisher,
+      @Value("${library.import.batch-size:1000}") int batchSize) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.objectMapper = objectMapper;
+    this.eventPublisher = eventPublisher;
+    this.batchSize = batchSize;
+  }
+
+  public enum Format {
+    CSV,
+    NDJSON;
+
+    public static Format of(MediaType contentType) {
+      if (contentType.isCompatibleWith(MediaType.valueOf("text/csv"))) {
+        return CSV;
+      }
+      if (contentType.isCompatibleWith(MediaType.APPLICATION_NDJSON)) {
+        return NDJSON;
+      }
+      throw new IllegalArgumentException("Unsupported content type " + contentType);
+    }
+
+    public static Format ofFileName(String fileName) {
+      String name = fileName.toLowerCase(Locale.ROOT);
+      if (name.endsWith(".csv")) {
+        return CSV;
+      }
+      if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+        return NDJSON;
+      }
+      throw new IllegalArgumentException("Unsupported file " + fileName + ", expected .csv, .ndjson or .jsonl");
+    }
+  }
+
+  public BookImportResultDto importBooks(InputStream in, Format format) throws IOException {
+    long start = System.currentTimeMillis();
+    long lastProgress = start;
+    long imported = 0;
+    long rejected = 0;
+
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    try (BookRecordReader records = format == Format.CSV ? new CsvBookReader(reader) : new NdjsonBookReader(reader, objectMapper)) {
+      List<BookDto> batch = new ArrayList<>(batchSize);
+      while (true) {
+        BookDto book;
+        try {
+          book = records.read();
+          if (book == null) {
+            break;
+          }
+          validate(book);
+        } catch (IllegalArgumentException e) {
+          if (rejected++ < MAX_LOGGED_REJECTS) {
+            logger.warn("Rejected book in line {}: {}", records.lineNumber(), e.getMessage());
+          }
+          continue;
+        }
+
+        batch.add(book);
+        if (batch.size() == batchSize) {
+          int size = batch.size();
+          int written = write(batch, rejected);
+          imported += written;
+          rejected += size - written;
+          long now = System.currentTimeMillis();
+          if (now - lastProgress >= PROGRESS_INTERVAL_MILLIS) {
+            logger.info("Imported {} books, {} books/s", imported, perSecond(imported, now - start));
+            lastProgress = now;
+          }
+        }
+      }
+      int size = batch.size();
+      int written = write(batch, rejected);
+      imported += written;
+      rejected += size - written;
+    } finally {
+      if (imported > 0) {
+        eventPublisher.publishEvent(new CatalogReloadedEvent(imported));
+      }
+    }
+
+    long duration = System.currentTimeMillis() - start;
+    logger.info("Imported {} books in {} ms, {} books/s, {} rejected", imported, duration, perSecond(imported, duration), rejected);
+    return new BookImportResultDto(imported, rejected, duration, perSecond(imported, duration));
+  }
+
+  /**
+   * Writes the batch and clears it, returns the number of books written.
+   */
+  private int write(List<BookDto> batch, long rejected) {
+    if (batch.isEmpty()) {
+      return 0;
+    }
+    int written = 0;
+    try {
+      upsert(batch);
+      written = batch.size();
+    } catch (DataIntegrityViolationException e) {
+      logger.warn("Batch of {} books failed, writing them one by one: {}", batch.size(), e.getMostSpecificCause().getMessage());
+      for (BookDto book : batch) {
+        try {
+          upsert(List.of(book));
+          written++;
+        } catch (DataIntegrityViolationException rowFailure) {
+          if (rejected++ < MAX_LOGGED_REJECTS) {
+            logger.warn("Rejected book {}: {}", book.isbn(), rowFailure.getMostSpecificCause().getMessage());
+          }
+        }
+      }
+    }
+    batch.clear();
+    return written;
+  }
+
+  private void upsert(List<BookDto> books) {
+    transactionTemplate.executeWithoutResult(status -> {
+      jdbcTemplate.batchUpdate(UPSERT, books, books.size(), (ps, book) -> {
+        ps.setString(1, book.isbn());
+        ps.setString(2, book.title());
+        ps.setString(3, book.author());
+        ps.setInt(4, book.publishedAt());
+        ps.setString(5, book.publisher());
+        ps.setString(6, book.language());
+        ps.setInt(7, book.pages());
+      });
+      jdbcTemplate.batchUpdate(UPSERT_DESCRIPTION, books, books.size(), (ps, book) -> {
+        ps.setString(1, book.isbn());
+        ps.setString(2, book.description() == null ? "" : book.description());
+      });
+    });
+  }
+
+  private static void validate(BookDto book) {
+    if (book.isbn() == null || book.title() == null || book.author() == null || book.publishedAt() == null
+        || book.publisher() == null || book.language() == null || book.pages() == null) {
+      throw new IllegalArgumentException("isbn, title, author, publishedAt, publisher, language and pages are mandatory");
+    }
+    // in strict mode a too long value fails the whole batch
+    if (book.isbn().length() > 32 || book.language().length() > 32
+        || book.title().length() > 255 || book.author().length() > 255 || book.publisher().length() > 255) {
+      throw new IllegalArgumentException("isbn and language are limited to 32, title, author and publisher to 255 characters");
+    }
+    if (book.description() != null && book.description().getBytes(StandardCharsets.UTF_8).length > MAX_DESCRIPTION_BYTES) {
+      throw new IllegalArgumentException("description is limited to " + MAX_DESCRIPTION_BYTES + " bytes");
+    }
+  }
+
+  private static long perSecond(long count, long millis) {
+    return millis == 0 ? count : count * 1000 / millis;
+  }
+}
@@ -0,0 +1,23 @@
+package org.kergru.library.books.importer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import org.kergru.library.model.BookDto;
+
+/**
+ * Reads one book record after the other from a stream, without holding the stream in memory.
+ */
+interface BookRecordReader extends Closeable {
+
+  /**
+   * Returns the next record or null at the end of the stream.
+   *
+   * @throws IllegalArgumentException if the record is malformed, the reader can continue with the next record
+   */
+  BookDto read() throws IOException;
+
+  /**
+   * Line number of the last record read, for error messages.
+   */
+  long lineNumber();
+}
@@ -0,0 +1,135 @@
+package org.kergru.library.books.importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.kergru.library.model.BookDto;
+
+/**
+ * CSV (RFC 4180) with a header line naming the {@link BookDto} fields, e.g. isbn,title,author,publishedAt,...
+ * Fields may be quoted, quoted fields may contain separators, line breaks and "" as escaped quote.
+ */
+class CsvBookReader implements BookRecordReader {
+
+  private final BufferedReader reader;
+
+  private final Map<String, Integer> columns = new HashMap<>();
+
+  private long lineNumber;
+
+  private long recordLineNumber;
+
+  CsvBookReader(BufferedReader reader) throws IOException {
+    this.reader = reader;
+    List<String> header = readRecord();
+    if (header == null) {
+      return;
+    }
+    for (int i = 0; i < header.size(); i++) {
+      columns.put(header.get(i).strip().toLowerCase(Locale.ROOT), i);
+    }
+    if (!columns.containsKey("isbn")) {
+      throw new IllegalArgumentException("CSV header has no isbn column");
+    }
+  }
+
+  @Override
+  public BookDto read() throws IOException {
+    List<String> fields;
+    do {
+      fields = readRecord();
+      if (fields == null) {
+        return null;
+      }
+    } while (fields.size() == 1 && fields.getFirst().isBlank());
+
+    return new BookDto(
+        field(fields, "isbn"),
+        field(fields, "title"),
+        field(fields, "author"),
+        intField(fields, "publishedat"),
+        field(fields, "publisher"),
+        field(fields, "language"),
+        intField(fields, "pages"),
+        field(fields, "description"),
+        null
+    );
+  }
+
+  @Override
+  public long lineNumber() {
+    return recordLineNumber;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  private String field(List<String> fields, String column) {
+    Integer index = columns.get(column);
+    if (index == null || index >= fields.size() || fields.get(index).isEmpty()) {
+      return null;
+    }
+    return fields.get(index);
+  }
+
+  private Integer intField(List<String> fields, String column) {
+    String value = field(fields, column);
+    try {
+      return value == null ? null : Integer.valueOf(value.strip());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(column + " is not a number: " + value);
+    }
+  }
+
+  /**
+   * Reads the fields of the next record, null at the end of the stream.
+   */
+  private List<String> readRecord() throws IOException {
+    int c = reader.read();
+    if (c == -1) {
+      return null;
+    }
+    lineNumber++;
+    recordLineNumber = lineNumber;
+
+    List<String> fields = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    while (c != -1) {
+      if (quoted) {
+        if (c == '"') {
+          reader.mark(1);
+          if (reader.read() == '"') {
+            field.append('"');
+          } else {
+            reader.reset();
+            quoted = false;
+          }
+        } else {
+          if (c == '\n') {
+            lineNumber++;
+          }
+          field.append((char) c);
+        }
+      } else if (c == '"' && field.isEmpty()) {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else if (c == '\n') {
+        break;
+      } else if (c != '\r') {
+        field.append((char) c);
+      }
+      c = reader.read();
+    }
+    fields.add(field.toString());
+    return fields;
+  }
+}
@@ -0,0 +1,53 @@
+package org.kergru.library.books.importer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.BufferedReader;
+import java.io.IOException;
+import org.kergru.library.model.BookDto;
+
+/**
+ * One {@link BookDto} as JSON object per line, blank lines are skipped.
+ */
+class NdjsonBookReader implements BookRecordReader {
+
+  private final BufferedReader reader;
+
+  private final ObjectReader objectReader;
+
+  private long lineNumber;
+
+  NdjsonBookReader(BufferedReader reader, ObjectMapper objectMapper) {
+    this.reader = reader;
+    this.objectReader = objectMapper.readerFor(BookDto.class);
+  }
+
+  @Override
+  public BookDto read() throws IOException {
+    String line;
+    do {
+      line = reader.readLine();
+      if (line == null) {
+        return null;
+      }
+      lineNumber++;
+    } while (line.isBlank());
+
+    try {
+      return objectReader.readValue(line);
+    } catch (JsonProcessingException e) {
+      throw new IllegalArgumentException(e.getOriginalMessage(), e);
+    }
+  }
+
+  @Override
+  public long lineNumber() {
+    return lineNumber;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+}
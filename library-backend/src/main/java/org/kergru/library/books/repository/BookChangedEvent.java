@@ -0,0 +1,8 @@
+package org.kergru.library.books.repository;
+
+/**
+ * Published after a book has been inserted, updated or deleted.
+ */
+public record BookChangedEvent(Long bookId, String isbn, boolean deleted) {
+
+}
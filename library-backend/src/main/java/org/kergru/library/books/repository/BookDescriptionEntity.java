@@ -0,0 +1,31 @@
+package org.kergru.library.books.repository;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * Description of a book, kept apart from the books table so catalog reads don't carry the TEXT column.
+ */
+@Entity
+@Table(name = "book_descriptions")
+public class BookDescriptionEntity {
+
+  @Id
+  @Column(name = "book_id")
+  private Long bookId;
+
+  @Column(nullable = false)
+  private String description;
+
+  protected BookDescriptionEntity() { /* JPA */ }
+
+  public Long getBookId() {
+    return bookId;
+  }
+
+  public String getDescription() {
+    return description;
+  }
+}
@@ -0,0 +1,12 @@
+package org.kergru.library.books.repository;
+
+import java.util.Optional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface BookDescriptionRepository extends JpaRepository<BookDescriptionEntity, Long> {
+
+  @Query("SELECT d.description FROM BookDescriptionEntity d WHERE d.bookId = :bookId")
+  Optional<String> findDescription(@Param("bookId") Long bookId);
+}
@@ -2,12 +2,14 @@ package org.kergru.library.books.repository;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
 
 @Entity
+@EntityListeners(BookEntityListener.class)
 @Table(name = "books")
 public class BookEntity {
 
@@ -33,9 +35,6 @@ public class BookEntity {
   @Column(nullable = false)
   private String language;
 
-  @Column(nullable = false)
-  private String description;
-
   @Column(nullable = false)
   private Integer pages;
 
@@ -49,7 +48,6 @@ public class BookEntity {
     this.publishedAt = year;
     this.publisher = publisher;
     this.language = language;
-    this.description = description;
     this.pages = pages;
   }
 
@@ -81,10 +79,6 @@ public class BookEntity {
     return language;
   }
 
-  public String getDescription() {
-    return description;
-  }
-
   public Integer getPages() {
     return pages;
   }
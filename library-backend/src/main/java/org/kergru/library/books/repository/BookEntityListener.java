@@ -0,0 +1,32 @@
+package org.kergru.library.books.repository;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * JPA entity listener which turns every write on {@link BookEntity} into a {@link BookChangedEvent}.
+ * Only depends on the event publisher, so Hibernate can create it while the EntityManagerFactory is still being built.
+ */
+@Component
+public class BookEntityListener {
+
+  private final ApplicationEventPublisher eventPublisher;
+
+  public BookEntityListener(ApplicationEventPublisher eventPublisher) {
+    this.eventPublisher = eventPublisher;
+  }
+
+  @PostPersist
+  @PostUpdate
+  public void onSaved(BookEntity book) {
+    eventPublisher.publishEvent(new BookChangedEvent(book.getId(), book.getIsbn(), false));
+  }
+
+  @PostRemove
+  public void onRemoved(BookEntity book) {
+    eventPublisher.publishEvent(new BookChangedEvent(book.getId(), book.getIsbn(), true));
+  }
+}
@@ -1,60 +1,51 @@
 package org.kergru.library.books.repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
-import org.springframework.data.domain.Page;
+import org.kergru.library.cache.CacheConfig;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
-public interface BookRepository extends JpaRepository<BookEntity, Long> {
+public interface BookRepository extends JpaRepository<BookEntity, Long>, JpaSpecificationExecutor<BookEntity> {
 
+  /**
+   * Cached including not found results, evicted by {@link BookChangedEvent}.
+   */
+  @Cacheable(CacheConfig.BOOKS_BY_ISBN)
   Optional<BookEntity> findByIsbn(String isbn);
 
+  List<BookEntity> findByIsbnIn(Collection<String> isbns);
+
+  /**
+   * Reads the searchable columns of books in id order, used to build the search index in batches.
+   */
   @Query("""
     SELECT
         b.id as id,
         b.isbn as isbn,
         b.title as title,
         b.author as author,
-        b.publishedAt as publishedAt,
-        b.publisher as publisher,
-        b.language as language,
-        b.description as description,
-        b.pages as pages,
-        l.id as loanId,
-        l.borrowedAt as borrowed_at,
-        l.userId as borrower_id
+        b.publishedAt as publishedAt
     FROM BookEntity b
-    LEFT JOIN LoanEntity l ON b.id = l.book.id AND l.returnedAt IS NULL
-    WHERE b.isbn = :isbn
+    WHERE b.id > :afterId
+    ORDER BY b.id
   """)
-  Optional<BookWithLoanProjection> findByIsbnWithLoan(@Param("isbn") String isbn);
+  List<BookSummaryProjection> findSummariesAfter(@Param("afterId") Long afterId, Pageable pageable);
 
   @Query("""
-    SELECT 
+    SELECT
         b.id as id,
         b.isbn as isbn,
         b.title as title,
         b.author as author,
-        b.publishedAt as publishedAt,
-        b.publisher as publisher,
-        b.language as language,
-        b.description as description,
-        b.pages as pages,
-        l.id as loanId,
-        l.borrowedAt as borrowedAt,
-        l.userId as borrowerId
+        b.publishedAt as publishedAt
     FROM BookEntity b
-    LEFT JOIN LoanEntity l ON b.id = l.book.id AND l.returnedAt IS NULL
-    WHERE 
-        (:#{#searchString} IS NULL OR 
-         b.title LIKE %:#{#searchString}% OR 
-         b.author LIKE %:#{#searchString}% OR 
-         b.isbn LIKE %:#{#searchString}%)
+    WHERE b.id = :id
   """)
-  Page<BookWithLoanProjection> searchBooksPaged(
-      @Param("searchString") String searchString,
-      Pageable pageable
-  );
+  Optional<BookSummaryProjection> findSummaryById(@Param("id") Long id);
 }
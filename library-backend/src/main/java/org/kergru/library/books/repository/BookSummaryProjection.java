@@ -0,0 +1,17 @@
+package org.kergru.library.books.repository;
+
+/**
+ * Searchable columns of a book, without description and loan status.
+ */
+public interface BookSummaryProjection {
+
+  Long getId();
+
+  String getIsbn();
+
+  String getTitle();
+
+  String getAuthor();
+
+  Integer getPublishedAt();
+}
@@ -0,0 +1,9 @@
+package org.kergru.library.books.repository;
+
+/**
+ * Published after books have been written in bulk, bypassing the {@link BookEntityListener}.
+ * Everything derived from the books table has to be rebuilt.
+ */
+public record CatalogReloadedEvent(long changedBooks) {
+
+}
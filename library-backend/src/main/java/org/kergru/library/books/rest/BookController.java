@@ -1,28 +1,64 @@
 package org.kergru.library.books.rest;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.Optional;
+import org.kergru.library.books.export.BookExporter;
+import org.kergru.library.books.importer.BookImporter;
 import org.kergru.library.books.service.BookService;
+import org.kergru.library.books.service.CatalogVersion;
 import org.kergru.library.model.BookDto;
+import org.kergru.library.model.BookImportResultDto;
 import org.kergru.library.model.PageResponseDto;
+import org.kergru.library.model.ResultView;
+import org.kergru.library.model.TotalMode;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/library/api")
 public class BookController {
 
+  private static final String EXPORT_TIMESTAMP_HEADER = "X-Export-Timestamp";
+
+  // clients may keep the response, but have to revalidate it with If-None-Match before using it
+  private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
   private final BookService bookService;
 
-  public BookController(BookService bookService) {
+  private final BookImporter bookImporter;
+
+  private final BookExporter bookExporter;
+
+  public BookController(BookService bookService, BookImporter bookImporter, BookExporter bookExporter) {
     this.bookService = bookService;
+    this.bookImporter = bookImporter;
+    this.bookExporter = bookExporter;
   }
 
   /**
-   * Returns all books
+   * Returns all books matching the search string, by page number or after the cursor of a previous page.
+   * total = EXACT | CACHED | NONE decides how totalElements and totalPages are determined.
+   * view = SUMMARY omits publisher and pages, they are not even read from the database then.
+   * The description is never part of the search result, it is only returned by getBook.
+   * The ETag is the catalog version, which changes with every book change, borrow, return and import.
+   * If it matches If-None-Match, 304 is returned without searching.
    */
   @PreAuthorize("isAuthenticated()")
   @GetMapping("/books")
@@ -30,17 +66,89 @@ public class BookController {
       @RequestParam(required = false) String searchString,
       @RequestParam(defaultValue = "0") int page,
       @RequestParam(defaultValue = "10") int size,
-      @RequestParam(defaultValue = "title") String sortBy
+      @RequestParam(defaultValue = "title") String sortBy,
+      @RequestParam(required = false) String cursor,
+      @RequestParam(defaultValue = "EXACT") TotalMode total,
+      @RequestParam(defaultValue = "FULL") ResultView view,
+      WebRequest request
   ) {
-    return ResponseEntity.ok(bookService.searchBooks(searchString, page, size, sortBy));
+    CatalogVersion.Version version = bookService.searchVersion();
+    if (isNotModified(request, version)) {
+      return null;
+    }
+    try {
+      return validated(version).body(bookService.searchBooks(searchString, page, size, sortBy, cursor, total, view));
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
   }
 
   /**
-   * Returns a single book by ISBN
+   * Returns a single book by ISBN.
+   * The ETag is the version of the book, which changes when the book is changed, borrowed or returned and with every import.
+   * If it matches If-None-Match, 304 is returned, for a cached book without any database access.
    */
   @PreAuthorize("isAuthenticated()")
   @GetMapping("/books/{isbn}")
-  public ResponseEntity<BookDto> getBook(@PathVariable String isbn) {
-    return ResponseEntity.of(bookService.getBook(isbn));
+  public ResponseEntity<BookDto> getBook(@PathVariable String isbn, WebRequest request) {
+    Optional<CatalogVersion.Version> version = bookService.bookVersion(isbn);
+    if (version.isEmpty()) {
+      return ResponseEntity.notFound().build();
+    }
+    if (isNotModified(request, version.get())) {
+      return null;
+    }
+    return bookService.getBook(isbn)
+        .map(book -> validated(version.get()).body(book))
+        .orElseGet(() -> ResponseEntity.notFound().build());
+  }
+
+  /**
+   * Sets the 304 response if the validators of the request match the version, the version has to be read before the response is built.
+   */
+  private static boolean isNotModified(WebRequest request, CatalogVersion.Version version) {
+    return request.checkNotModified(version.eTag(), version.modifiedAt().toEpochMilli());
+  }
+
+  private static ResponseEntity.BodyBuilder validated(CatalogVersion.Version version) {
+    return ResponseEntity.ok()
+        .eTag(version.eTag())
+        .lastModified(version.modifiedAt())
+        .cacheControl(REVALIDATE);
+  }
+
+  /**
+   * Imports books from a CSV (with header line) or NDJSON body of BookDto records, books with an existing isbn are updated.
+   * The body is streamed into the database in batches, it is never held in memory as a whole.
+   */
+  @PreAuthorize("hasRole('LIBRARIAN')")
+  @PostMapping(path = "/books/import", consumes = {"text/csv", MediaType.APPLICATION_NDJSON_VALUE})
+  public ResponseEntity<BookImportResultDto> importBooks(
+      @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+      InputStream body
+  ) throws IOException {
+    try {
+      return ResponseEntity.ok(bookImporter.importBooks(body, BookImporter.Format.of(contentType)));
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+  }
+
+  /**
+   * Streams all books with their loan status as NDJSON, for the sync of downstream systems.
+   * With since only the books changed or borrowed/returned after since are exported.
+   * The X-Export-Timestamp header is the since to pass with the next export, it lies a bit before the export,
+   * so the next export may repeat books of this one, see {@link BookExporter#nextSince()}.
+   */
+  @PreAuthorize("hasRole('LIBRARIAN')")
+  @GetMapping(path = "/books/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> exportBooks(
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant since
+  ) {
+    Instant exportTimestamp = bookExporter.nextSince();
+    return ResponseEntity.ok()
+        .contentType(MediaType.APPLICATION_NDJSON)
+        .header(EXPORT_TIMESTAMP_HEADER, exportTimestamp.toString())
+        .body(out -> bookExporter.export(since, out));
   }
 }
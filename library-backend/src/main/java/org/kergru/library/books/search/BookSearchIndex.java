@@ -0,0 +1,345 @@
+package org.kergru.library.books.search;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import org.kergru.library.books.repository.BookChangedEvent;
+import org.kergru.library.books.repository.BookRepository;
+import org.kergru.library.books.repository.BookSummaryProjection;
+import org.kergru.library.books.repository.CatalogReloadedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Memory-resident inverted index over title, author and isbn of all books.
+ * <p>
+ * The index is built in the background after startup and kept up to date by {@link BookChangedEvent}s.
+ * Every query token has to match (as prefix) a token of the book, matches are ranked with BM25.
+ * This differs on purpose from the SQL search, which matches the whole search string as substring (LIKE '%...%'):
+ * the tokens may appear in any order ("code clean" finds Clean Code), but a token has to start a word ("ode" doesn't).
+ * <p>
+ * As long as the index is not warm, {@link #search(String, String)} returns an empty Optional and the caller
+ * has to fall back to the SQL search. A failed build drops the current snapshot, which would miss the reloaded
+ * catalog, and is retried after retryDelay.
+ */
+@Component
+public class BookSearchIndex {
+
+  public static final String SORT_RELEVANCE = "relevance";
+
+  private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+  private static final double K1 = 1.2;
+
+  private static final double B = 0.75;
+
+  private static final int BUILD_BATCH_SIZE = 5_000;
+
+  private static final Map<String, Comparator<IndexedBook>> SORT_ORDERS = Map.of(
+      "title", Comparator.comparing(IndexedBook::title, String.CASE_INSENSITIVE_ORDER),
+      "author", Comparator.comparing(IndexedBook::author, String.CASE_INSENSITIVE_ORDER),
+      "isbn", Comparator.comparing(IndexedBook::isbn),
+      "publishedAt", Comparator.comparing(IndexedBook::publishedAt)
+  );
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final BookRepository bookRepository;
+
+  private final boolean enabled;
+
+  private final Duration retryDelay;
+
+  private final AtomicBoolean building = new AtomicBoolean();
+
+  // set if the catalog has been reloaded while a build is running, the build is repeated then
+  private final AtomicBoolean rebuildRequested = new AtomicBoolean();
+
+  // ids changed while a build is running, re-applied after the new snapshot is in place
+  private final Set<Long> pendingUpdates = ConcurrentHashMap.newKeySet();
+
+  private volatile Snapshot snapshot; // null until the first build has finished
+
+  // incremented once a new snapshot is in place and the pending updates are re-applied
+  private final AtomicLong generation = new AtomicLong();
+
+  public BookSearchIndex(
+      BookRepository bookRepository,
+      @Value("${library.search.index.enabled:true}") boolean enabled,
+      @Value("${library.search.index.retry-delay:30s}") Duration retryDelay) {
+    this.bookRepository = bookRepository;
+    this.enabled = enabled;
+    this.retryDelay = retryDelay;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onApplicationReady() {
+    if (enabled) {
+      Thread.ofVirtual().name("book-search-index").start(this::rebuild);
+    }
+  }
+
+  @EventListener
+  public void onCatalogReloaded(CatalogReloadedEvent event) {
+    if (enabled) {
+      rebuildRequested.set(true);
+      Thread.ofVirtual().name("book-search-index").start(this::rebuild);
+    }
+  }
+
+  @TransactionalEventListener(fallbackExecution = true)
+  @Order(Ordered.HIGHEST_PRECEDENCE) // before CatalogVersion
+  public void onBookChanged(BookChangedEvent event) {
+    if (!enabled) {
+      return;
+    }
+    if (building.get()) {
+      pendingUpdates.add(event.bookId());
+    }
+    reindex(event.bookId());
+  }
+
+  public boolean isReady() {
+    return snapshot != null;
+  }
+
+  /**
+   * Incremented whenever a snapshot is put in place or dropped after a failed build, 0 as long as the index
+   * has never been warm. Updates of single books don't change it.
+   */
+  public long generation() {
+    return generation.get();
+  }
+
+  /**
+   * Returns the ids of all books matching the query, ordered by sortBy.
+   * Empty if the index is not warm, the sort order is not supported by the index or the query has no tokens
+   * (e.g. only punctuation, which the SQL search still matches as substring).
+   */
+  public Optional<List<Long>> search(String query, String sortBy) {
+    Snapshot current = snapshot;
+    if (current == null || !(SORT_RELEVANCE.equals(sortBy) || SORT_ORDERS.containsKey(sortBy))) {
+      return Optional.empty();
+    }
+    List<String> tokens = tokenize(query);
+    if (tokens.isEmpty()) {
+      return Optional.empty();
+    }
+
+    Map<Long, Double> scores = current.score(tokens);
+    List<IndexedBook> matches = new ArrayList<>(scores.size());
+    scores.keySet().forEach(id -> {
+      IndexedBook book = current.docs.get(id);
+      if (book != null) {
+        matches.add(book);
+      }
+    });
+
+    Comparator<IndexedBook> order = SORT_RELEVANCE.equals(sortBy)
+        ? Comparator.comparing((IndexedBook b) -> scores.get(b.id())).reversed()
+        : SORT_ORDERS.get(sortBy);
+    matches.sort(order.thenComparing(IndexedBook::id));
+    return Optional.of(matches.stream().map(IndexedBook::id).toList());
+  }
+
+  /**
+   * Builds a new snapshot from the books table and replaces the current one.
+   */
+  void rebuild() {
+    if (!building.compareAndSet(false, true)) {
+      return;
+    }
+    rebuildRequested.set(false);
+    boolean built = false;
+    boolean dropped = false;
+    try {
+      long start = System.currentTimeMillis();
+      Snapshot fresh = new Snapshot();
+      long afterId = 0;
+      List<BookSummaryProjection> batch;
+      do {
+        batch = bookRepository.findSummariesAfter(afterId, PageRequest.of(0, BUILD_BATCH_SIZE));
+        batch.forEach(fresh::add);
+        if (!batch.isEmpty()) {
+          afterId = batch.getLast().getId();
+        }
+      } while (batch.size() == BUILD_BATCH_SIZE);
+
+      snapshot = fresh;
+      built = true;
+      logger.info("Book search index built with {} books in {} ms", fresh.docs.size(), System.currentTimeMillis() - start);
+    } catch (RuntimeException e) {
+      dropped = snapshot != null;
+      snapshot = null;
+      logger.error("Failed to build book search index, falling back to SQL search, retrying in {}", retryDelay, e);
+    } finally {
+      building.set(false);
+    }
+
+    Set<Long> changed = new HashSet<>(pendingUpdates);
+    pendingUpdates.removeAll(changed);
+    changed.forEach(this::reindex);
+    if (built || dropped) {
+      generation.incrementAndGet();
+    }
+
+    if (rebuildRequested.get()) {
+      rebuild();
+    } else if (!built) {
+      Thread.ofVirtual().name("book-search-index-retry").start(this::retryRebuild);
+    }
+  }
+
+  private void retryRebuild() {
+    try {
+      Thread.sleep(retryDelay);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+    if (snapshot == null) {
+      rebuild();
+    }
+  }
+
+  private void reindex(Long bookId) {
+    Snapshot current = snapshot;
+    if (current == null) {
+      return;
+    }
+    Optional<BookSummaryProjection> book = bookRepository.findSummaryById(bookId);
+    current.remove(bookId);
+    book.ifPresent(current::add);
+  }
+
+  static List<String> tokenize(String text) {
+    if (text == null) {
+      return List.of();
+    }
+    return TOKEN_SEPARATOR.splitAsStream(text.toLowerCase(Locale.ROOT))
+        .filter(token -> !token.isEmpty())
+        .toList();
+  }
+
+  /**
+   * Indexed fields of a book. The isbn is indexed as one token without separators.
+   */
+  record IndexedBook(Long id, String isbn, String title, String author, Integer publishedAt, List<String> terms) {
+
+    static IndexedBook of(BookSummaryProjection book) {
+      List<String> terms = new ArrayList<>(tokenize(book.getTitle()));
+      terms.addAll(tokenize(book.getAuthor()));
+      String isbn = book.getIsbn().replaceAll("[^0-9Xx]", "").toLowerCase(Locale.ROOT);
+      if (!isbn.isEmpty()) {
+        terms.add(isbn);
+      }
+      return new IndexedBook(book.getId(), book.getIsbn(), book.getTitle(), book.getAuthor(), book.getPublishedAt(), terms);
+    }
+  }
+
+  /**
+   * Term dictionary with postings (book id -> term frequency). Writers synchronize, readers don't.
+   */
+  static class Snapshot {
+
+    private final ConcurrentSkipListMap<String, Map<Long, Integer>> postings = new ConcurrentSkipListMap<>();
+
+    private final Map<Long, IndexedBook> docs = new ConcurrentHashMap<>();
+
+    private final AtomicLong totalTerms = new AtomicLong();
+
+    synchronized void add(BookSummaryProjection projection) {
+      IndexedBook book = IndexedBook.of(projection);
+      docs.put(book.id(), book);
+      totalTerms.addAndGet(book.terms().size());
+      for (String term : book.terms()) {
+        postings.computeIfAbsent(term, t -> new ConcurrentHashMap<>()).merge(book.id(), 1, Integer::sum);
+      }
+    }
+
+    synchronized void remove(Long bookId) {
+      IndexedBook book = docs.remove(bookId);
+      if (book == null) {
+        return;
+      }
+      totalTerms.addAndGet(-book.terms().size());
+      for (String term : new HashSet<>(book.terms())) {
+        Map<Long, Integer> docsWithTerm = postings.get(term);
+        if (docsWithTerm != null) {
+          docsWithTerm.remove(bookId);
+          if (docsWithTerm.isEmpty()) {
+            postings.remove(term);
+          }
+        }
+      }
+    }
+
+    /**
+     * Sums up the BM25 scores of all query tokens, books not matching every token are dropped.
+     * A query token matches all terms it is a prefix of, the score of a prefix match is scaled down by its coverage.
+     */
+    Map<Long, Double> score(List<String> queryTokens) {
+      int docCount = docs.size();
+      if (queryTokens.isEmpty() || docCount == 0) {
+        return Map.of();
+      }
+      double avgLength = Math.max(1.0, (double) totalTerms.get() / docCount);
+
+      Map<Long, Double> result = null;
+      for (String token : queryTokens) {
+        Map<Long, Double> tokenScores = new HashMap<>();
+        for (Map.Entry<String, Map<Long, Integer>> entry : postings.subMap(token, true, token + Character.MAX_VALUE, true).entrySet()) {
+          Map<Long, Integer> docsWithTerm = entry.getValue();
+          double coverage = (double) token.length() / entry.getKey().length();
+          double idf = Math.log(1 + (docCount - docsWithTerm.size() + 0.5) / (docsWithTerm.size() + 0.5));
+          docsWithTerm.forEach((bookId, tf) -> {
+            IndexedBook book = docs.get(bookId);
+            if (book == null) {
+              return;
+            }
+            double norm = K1 * (1 - B + B * book.terms().size() / avgLength);
+            double score = coverage * idf * tf * (K1 + 1) / (tf + norm);
+            tokenScores.merge(bookId, score, Math::max);
+          });
+        }
+
+        if (result == null) {
+          result = tokenScores;
+        } else {
+          Map<Long, Double> previous = result;
+          result = new HashMap<>();
+          for (Map.Entry<Long, Double> entry : tokenScores.entrySet()) {
+            Double previousScore = previous.get(entry.getKey());
+            if (previousScore != null) {
+              result.put(entry.getKey(), previousScore + entry.getValue());
+            }
+          }
+        }
+        if (result.isEmpty()) {
+          break;
+        }
+      }
+      return result;
+    }
+  }
+}
@@ -1,34 +1,161 @@
 package org.kergru.library.books.service;
 
+import jakarta.persistence.Tuple;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
+import org.kergru.library.books.repository.BookChangedEvent;
+import org.kergru.library.books.repository.BookDescriptionRepository;
 import org.kergru.library.books.repository.BookEntity;
 import org.kergru.library.books.repository.BookRepository;
-import org.kergru.library.books.repository.BookWithLoanProjection;
+import org.kergru.library.books.repository.CatalogReloadedEvent;
+import org.kergru.library.books.search.BookSearchIndex;
+import org.kergru.library.cache.CacheConfig;
+import org.kergru.library.loans.service.BookAvailability;
 import org.kergru.library.model.BookDto;
-import org.kergru.library.model.LoanStatusDto;
 import org.kergru.library.model.PageResponseDto;
+import org.kergru.library.model.ResultView;
+import org.kergru.library.model.TotalMode;
+import org.kergru.library.search.FullTextQuery;
+import org.kergru.library.search.ProjectedSearch;
+import org.kergru.library.search.SearchCountCache;
+import org.kergru.library.search.SearchCursor;
+import org.kergru.library.search.SearchMode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
 import org.springframework.util.StringUtils;
 
 @Service
 public class BookService {
 
+  private static final String COUNT_SCOPE = "books";
+
+  private static final Set<String> CURSOR_SORT_KEYS = Set.of("title", "author", "isbn", "publishedAt");
+
+  private static final List<String> SUMMARY_ATTRIBUTES = List.of("id", "isbn", "title", "author", "publishedAt", "language");
+
+  private static final List<String> FULL_ATTRIBUTES = List.of(
+      "id", "isbn", "title", "author", "publishedAt", "publisher", "language", "pages");
+
   private final BookRepository bookRepository;
 
-  public BookService(BookRepository bookRepository) {
+  private final BookDescriptionRepository descriptionRepository;
+
+  private final BookAvailability availability;
+
+  private final BookSearchIndex searchIndex;
+
+  private final SearchMode searchMode;
+
+  private final SearchCountCache countCache;
+
+  private final ProjectedSearch projectedSearch;
+
+  private final CatalogVersion catalogVersion;
+
+  public BookService(
+      BookRepository bookRepository,
+      BookDescriptionRepository descriptionRepository,
+      BookAvailability availability,
+      BookSearchIndex searchIndex,
+      @Value("${library.search.mode:like}") SearchMode searchMode,
+      SearchCountCache countCache,
+      ProjectedSearch projectedSearch,
+      CatalogVersion catalogVersion) {
     this.bookRepository = bookRepository;
+    this.descriptionRepository = descriptionRepository;
+    this.availability = availability;
+    this.searchIndex = searchIndex;
+    this.searchMode = searchMode;
+    this.countCache = countCache;
+    this.projectedSearch = projectedSearch;
+    this.catalogVersion = catalogVersion;
+  }
+
+  @TransactionalEventListener(fallbackExecution = true)
+  @Order(Ordered.HIGHEST_PRECEDENCE) // before CatalogVersion
+  @CacheEvict(cacheNames = CacheConfig.BOOKS_BY_ISBN, key = "#event.isbn")
+  public void onBookChanged(BookChangedEvent event) {
+    countCache.invalidate(COUNT_SCOPE);
   }
 
-  public PageResponseDto<BookDto> searchBooks(String searchString, int page, int size, String sortBy) {
+  @EventListener
+  @Order(Ordered.HIGHEST_PRECEDENCE) // before CatalogVersion
+  @CacheEvict(cacheNames = CacheConfig.BOOKS_BY_ISBN, allEntries = true)
+  public void onCatalogReloaded(CatalogReloadedEvent event) {
+    countCache.invalidate(COUNT_SCOPE);
+  }
+
+  /**
+   * Searches books by title, author or isbn. Uses the in-memory search index if it is warm,
+   * otherwise falls back to the SQL search configured by library.search.mode. Sort order "relevance" is only available with the index,
+   * the SQL search sorts by title instead.
+   * <p>
+   * Without cursor the page is selected by page number. With a cursor (nextCursor of a previous page) the page
+   * continues after the cursor position with a keyset query, the sort order of the cursor wins and page is ignored.
+   * totalMode decides if a page selected by page number is counted, cursor pages are never counted.
+   * Results of the search index are always counted exactly, as this is for free.
+   * view selects the columns which are read and returned, the loan status is part of every view.
+   *
+   * @throws IllegalArgumentException if the cursor is invalid
+   */
+  public PageResponseDto<BookDto> searchBooks(
+      String searchString, int page, int size, String sortBy, String cursor, TotalMode totalMode, ResultView view) {
+
+    SearchCursor after = cursor != null ? SearchCursor.decode(cursor) : null;
+    if (after != null) {
+      sortBy = after.sortBy();
+    }
+
+    if (StringUtils.hasText(searchString)) {
+      Optional<List<Long>> matchingIds = searchIndex.search(searchString, sortBy);
+      if (matchingIds.isPresent()) {
+        List<Long> ids = matchingIds.get();
+        if (after == null) {
+          return toPage(ids, page, size, sortBy, view);
+        }
+        int position = ids.indexOf(after.id());
+        if (position >= 0) {
+          return toCursorPage(ids.subList(position + 1, ids.size()), size, sortBy, view);
+        }
+        // book of the cursor does not match anymore, continue by its sort key in the database
+      }
+    }
 
-    var bookPage = bookRepository.searchBooksPaged(
-        (StringUtils.hasText(searchString) ? searchString : null),
-        PageRequest.of(page, size, Sort.by(sortBy)));
+    String sqlSortBy = BookSearchIndex.SORT_RELEVANCE.equals(sortBy) ? "title" : sortBy;
+    if (after != null) {
+      return searchSqlAfter(searchString, size, sortBy, sqlSortBy, after, view);
+    }
+
+    PageRequest pageRequest = PageRequest.of(page, size, Sort.by(sqlSortBy).and(Sort.by("id")));
+    return switch (totalMode) {
+      case EXACT -> searchSqlCounted(searchString, pageRequest, sortBy, view);
+      case CACHED -> searchSqlCached(searchString, pageRequest, sortBy, view);
+      case NONE -> {
+        Slice<Tuple> slice = searchSqlSliced(searchString, pageRequest, view);
+        List<BookDto> content = toDtos(slice.getContent(), view);
+        yield PageResponseDto.ofSlice(content, page, size, slice.hasNext(), nextCursor(sortBy, slice, content));
+      }
+    };
+  }
+
+  private PageResponseDto<BookDto> searchSqlCounted(
+      String searchString, PageRequest pageRequest, String sortBy, ResultView view) {
+    var bookPage = searchSql(searchString, pageRequest, view);
+    List<BookDto> content = toDtos(bookPage.getContent(), view);
     return new PageResponseDto<>(
-        bookPage.getContent().stream().map(this::toDto).collect(Collectors.toList()),
+        content,
         bookPage.getNumber(),
         bookPage.getSize(),
         bookPage.getTotalPages(),
@@ -36,15 +163,207 @@ public class BookService {
         bookPage.isFirst(),
         bookPage.isLast(),
         bookPage.getNumberOfElements(),
-        bookPage.isEmpty()
+        bookPage.isEmpty(),
+        bookPage.hasNext() ? nextCursor(sortBy, content.getLast(), idOf(bookPage.getContent().getLast())) : null,
+        TotalMode.EXACT
+    );
+  }
+
+  /**
+   * Counts only if the count of the search string is not cached yet, otherwise reads a slice and takes the cached total.
+   */
+  private PageResponseDto<BookDto> searchSqlCached(
+      String searchString, PageRequest pageRequest, String sortBy, ResultView view) {
+    SearchCountCache.Entry count = countCache.lookup(COUNT_SCOPE, searchString);
+    Optional<Long> cachedTotal = count.get();
+    if (cachedTotal.isEmpty()) {
+      PageResponseDto<BookDto> counted = searchSqlCounted(searchString, pageRequest, sortBy, view);
+      count.put(counted.totalElements());
+      return counted;
+    }
+
+    long total = cachedTotal.get();
+    Slice<Tuple> slice = searchSqlSliced(searchString, pageRequest, view);
+    List<BookDto> content = toDtos(slice.getContent(), view);
+    return new PageResponseDto<>(
+        content,
+        slice.getNumber(),
+        slice.getSize(),
+        (int) ((total + slice.getSize() - 1) / slice.getSize()),
+        total,
+        slice.isFirst(),
+        slice.isLast(),
+        slice.getNumberOfElements(),
+        slice.isEmpty(),
+        nextCursor(sortBy, slice, content),
+        TotalMode.CACHED
+    );
+  }
+
+  /**
+   * Reads size + 1 books to find out if there is a next page, without the count query and without the loan join.
+   */
+  private Slice<Tuple> searchSqlSliced(String searchString, PageRequest pageRequest, ResultView view) {
+    return projectedSearch.findSlice(BookEntity.class, matching(searchString), attributes(view), pageRequest);
+  }
+
+  private Page<Tuple> searchSql(String searchString, PageRequest pageRequest, ResultView view) {
+    return projectedSearch.findPage(BookEntity.class, matching(searchString), attributes(view), pageRequest);
+  }
+
+  /**
+   * Keyset query: reads size + 1 books after the cursor to find out if there is a next page, no OFFSET and no COUNT.
+   */
+  private PageResponseDto<BookDto> searchSqlAfter(
+      String searchString, int size, String sortBy, String sqlSortBy, SearchCursor after, ResultView view) {
+    if (!CURSOR_SORT_KEYS.contains(sqlSortBy)) {
+      throw new IllegalArgumentException("Cursor not supported for sort order " + sortBy);
+    }
+    Specification<BookEntity> spec = matching(searchString).and(after.after(sqlSortBy));
+    List<Tuple> books = projectedSearch.find(
+        BookEntity.class, spec, attributes(view), Sort.by(sqlSortBy).and(Sort.by("id")), 0, size + 1);
+
+    boolean hasNext = books.size() > size;
+    List<Tuple> pageBooks = hasNext ? books.subList(0, size) : books;
+    List<BookDto> content = toDtos(pageBooks, view);
+    return PageResponseDto.ofCursor(content, size, hasNext ? nextCursor(sortBy, content.getLast(), idOf(pageBooks.getLast())) : null);
+  }
+
+  private List<BookDto> toDtos(List<Tuple> books, ResultView view) {
+    return books.stream().map(b -> toDtoWithLoanStatus(b, view)).toList();
+  }
+
+  private static List<String> attributes(ResultView view) {
+    return view == ResultView.SUMMARY ? SUMMARY_ATTRIBUTES : FULL_ATTRIBUTES;
+  }
+
+  private Specification<BookEntity> matching(String searchString) {
+    return (root, query, cb) -> {
+      if (!StringUtils.hasText(searchString)) {
+        return cb.conjunction();
+      }
+      if (searchMode == SearchMode.FULLTEXT) {
+        String booleanModeQuery = FullTextQuery.booleanMode(searchString);
+        if (!booleanModeQuery.isEmpty()) {
+          return FullTextQuery.matches(cb, booleanModeQuery, root.get("title"), root.get("author"), root.get("isbn"));
+        }
+      }
+      String pattern = "%" + searchString + "%";
+      return cb.or(cb.like(root.get("title"), pattern), cb.like(root.get("author"), pattern), cb.like(root.get("isbn"), pattern));
+    };
+  }
+
+  /**
+   * Loads one page of the ordered ids with a single query and keeps the order of the ids.
+   */
+  private PageResponseDto<BookDto> toPage(List<Long> orderedIds, int page, int size, String sortBy, ResultView view) {
+    int total = orderedIds.size();
+    int totalPages = (total + size - 1) / size;
+    List<Long> pageIds = orderedIds.subList(Math.min(page * size, total), Math.min((page + 1) * size, total));
+
+    List<BookDto> content = loadOrdered(pageIds, view);
+    boolean last = page >= totalPages - 1;
+    return new PageResponseDto<>(
+        content,
+        page,
+        size,
+        totalPages,
+        total,
+        page == 0,
+        last,
+        content.size(),
+        content.isEmpty(),
+        !last && !content.isEmpty() ? nextCursor(sortBy, content.getLast(), pageIds.getLast()) : null,
+        TotalMode.EXACT
     );
   }
 
+  private PageResponseDto<BookDto> toCursorPage(List<Long> remainingIds, int size, String sortBy, ResultView view) {
+    List<Long> pageIds = remainingIds.subList(0, Math.min(size, remainingIds.size()));
+    List<BookDto> content = loadOrdered(pageIds, view);
+    boolean hasNext = remainingIds.size() > size;
+    return PageResponseDto.ofCursor(content, size, hasNext ? nextCursor(sortBy, content.getLast(), pageIds.getLast()) : null);
+  }
+
+  private List<BookDto> loadOrdered(List<Long> ids, ResultView view) {
+    if (ids.isEmpty()) {
+      return List.of();
+    }
+    Specification<BookEntity> withIds = (root, query, cb) -> root.get("id").in(ids);
+    return projectedSearch.find(BookEntity.class, withIds, attributes(view), Sort.unsorted(), 0, ids.size()).stream()
+        .sorted(Comparator.comparingInt(b -> ids.indexOf(idOf(b))))
+        .map(b -> toDtoWithLoanStatus(b, view))
+        .toList();
+  }
+
+  /**
+   * Cursor after the given book, null if the sort order is not supported for cursors.
+   * For "relevance" the title is stored as key, which is used if the search index can't continue the result.
+   */
+  private static String nextCursor(String sortBy, Slice<Tuple> slice, List<BookDto> content) {
+    return slice.hasNext() ? nextCursor(sortBy, content.getLast(), idOf(slice.getContent().getLast())) : null;
+  }
+
+  private static String nextCursor(String sortBy, BookDto last, Long lastId) {
+    String key = switch (sortBy) {
+      case "title", BookSearchIndex.SORT_RELEVANCE -> last.title();
+      case "author" -> last.author();
+      case "isbn" -> last.isbn();
+      case "publishedAt" -> String.valueOf(last.publishedAt());
+      default -> null;
+    };
+    return key != null ? new SearchCursor(sortBy, key, lastId).encode() : null;
+  }
+
+  /**
+   * Version of the search results, for conditional GETs.
+   */
+  public CatalogVersion.Version searchVersion() {
+    return catalogVersion.search();
+  }
+
+  /**
+   * Version of a book, for conditional GETs, empty if there is no book with the isbn.
+   * The book is looked up in the book cache, so a conditional GET of a cached book doesn't touch the database.
+   */
+  public Optional<CatalogVersion.Version> bookVersion(String isbn) {
+    return bookRepository.findByIsbn(isbn).map(b -> catalogVersion.book(b.getId()));
+  }
+
+  /**
+   * Returns a book with its description, which no other read loads.
+   */
   public Optional<BookDto> getBook(String isbn) {
-    return bookRepository.findByIsbnWithLoan(isbn).map(this::toDto);
+    return bookRepository.findByIsbn(isbn)
+        .map(b -> toDtoWithLoanStatus(b, descriptionRepository.findDescription(b.getId()).orElse(null)));
   }
 
-  public static BookDto toDto(BookEntity b) {
+  /**
+   * Maps a projected book with its loan status, attributes not selected by the view and the description stay null.
+   */
+  private BookDto toDtoWithLoanStatus(Tuple b, ResultView view) {
+    boolean full = view == ResultView.FULL;
+    return new BookDto(
+        b.get("isbn", String.class),
+        b.get("title", String.class),
+        b.get("author", String.class),
+        b.get("publishedAt", Integer.class),
+        full ? b.get("publisher", String.class) : null,
+        b.get("language", String.class),
+        full ? b.get("pages", Integer.class) : null,
+        null,
+        availability.loanStatus(idOf(b))
+    );
+  }
+
+  private static Long idOf(Tuple book) {
+    return book.get("id", Long.class);
+  }
+
+  /**
+   * Maps a book with its loan status, which is taken from {@link BookAvailability} instead of the loans table.
+   */
+  private BookDto toDtoWithLoanStatus(BookEntity b, String description) {
     return new BookDto(
         b.getIsbn(),
         b.getTitle(),
@@ -53,12 +372,12 @@ public class BookService {
         b.getPublisher(),
         b.getLanguage(),
         b.getPages(),
-        b.getDescription(),
-        null
+        description,
+        availability.loanStatus(b.getId())
     );
   }
 
-  private BookDto toDto(BookWithLoanProjection b) {
+  public static BookDto toDto(BookEntity b) {
     return new BookDto(
         b.getIsbn(),
         b.getTitle(),
@@ -67,13 +386,8 @@ public class BookService {
         b.getPublisher(),
         b.getLanguage(),
         b.getPages(),
-        b.getDescription(),
-        new LoanStatusDto(
-            b.getLoanId() == null,
-            b.getLoanId() != null ? b.getBorrowerId() : null,
-            b.getLoanId() != null ? b.getBorrowedAt() : null
-        )
+        null,
+        null
     );
   }
 }
-
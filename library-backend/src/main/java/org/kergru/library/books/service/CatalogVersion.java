@@ -0,0 +1,115 @@
+package org.kergru.library.books.service;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.kergru.library.books.repository.BookChangedEvent;
+import org.kergru.library.books.repository.CatalogReloadedEvent;
+import org.kergru.library.books.search.BookSearchIndex;
+import org.kergru.library.loans.repository.LoanChangedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Versions of the catalog and of single books, the validators (ETag, Last-Modified) of conditional GETs on the book endpoints.
+ * <p>
+ * The version of a book changes when the book is changed, borrowed or returned, the catalog version with every change
+ * of any book, every borrow, return and import. An import changes the versions of all books.
+ * Versions are kept in memory only and numbered from the startup time in microseconds, so validators issued before a restart
+ * don't match afterwards.
+ * <p>
+ * The listeners run last, after the book cache, the search index and the active loans have been updated.
+ * Otherwise a response built from the old state could be tagged with the new version.
+ */
+@Component
+public class CatalogVersion {
+
+  private final BookSearchIndex searchIndex;
+
+  private final AtomicLong lastNumber;
+
+  // books changed since the last import, all others have the version of the import
+  private final Map<Long, Version> bookVersions = new ConcurrentHashMap<>();
+
+  private volatile Version importVersion;
+
+  private final AtomicReference<Version> catalogVersion;
+
+  public CatalogVersion(BookSearchIndex searchIndex) {
+    this.searchIndex = searchIndex;
+    Instant now = Instant.now();
+    this.lastNumber = new AtomicLong(now.getEpochSecond() * 1_000_000 + now.getNano() / 1_000);
+    this.importVersion = new Version(lastNumber.get(), now);
+    this.catalogVersion = new AtomicReference<>(importVersion);
+  }
+
+  @TransactionalEventListener(fallbackExecution = true)
+  @Order(Ordered.LOWEST_PRECEDENCE)
+  public void onBookChanged(BookChangedEvent event) {
+    changed(event.bookId());
+  }
+
+  @TransactionalEventListener(fallbackExecution = true)
+  @Order(Ordered.LOWEST_PRECEDENCE)
+  public void onLoanChanged(LoanChangedEvent event) {
+    changed(event.bookId());
+  }
+
+  @EventListener
+  @Order(Ordered.LOWEST_PRECEDENCE)
+  public void onCatalogReloaded(CatalogReloadedEvent event) {
+    Version version = next();
+    importVersion = version;
+    bookVersions.clear();
+    catalogVersion.accumulateAndGet(version, Version::latest);
+  }
+
+  /**
+   * Version of a single book (GET /books/{isbn}).
+   */
+  public Version book(Long bookId) {
+    return bookVersions.getOrDefault(bookId, importVersion);
+  }
+
+  /**
+   * Version of all search results (GET /books). Also changes when the search index has been rebuilt,
+   * the index may order results differently than the SQL search.
+   */
+  public Version search() {
+    Version catalog = catalogVersion.get();
+    return new Version(catalog.number(), catalog.modifiedAt(), searchIndex.generation());
+  }
+
+  /**
+   * Concurrent changes may arrive out of order, a version never goes back to a lower number.
+   */
+  private void changed(Long bookId) {
+    Version version = next();
+    bookVersions.merge(bookId, version, Version::latest);
+    catalogVersion.accumulateAndGet(version, Version::latest);
+  }
+
+  private Version next() {
+    return new Version(lastNumber.incrementAndGet(), Instant.now());
+  }
+
+  public record Version(long number, Instant modifiedAt, long indexGeneration) {
+
+    Version(long number, Instant modifiedAt) {
+      this(number, modifiedAt, 0);
+    }
+
+    static Version latest(Version a, Version b) {
+      return a.number >= b.number ? a : b;
+    }
+
+    public String eTag() {
+      return "\"" + Long.toString(number, 36) + (indexGeneration > 0 ? "." + indexGeneration : "") + "\"";
+    }
+  }
+}
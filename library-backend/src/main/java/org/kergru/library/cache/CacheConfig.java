@@ -0,0 +1,40 @@
+package org.kergru.library.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Local Caffeine caches for the lookups of books by isbn and users by username, including not found results.
+ * The user ids by username have their own cache without expiry, as the id of a username never changes.
+ * <p>
+ * Puts and evictions inside a transaction are applied after its commit, so a rolled back write doesn't leave its entity in
+ * the cache and a concurrent read can't re-cache the old entity before the change is visible.
+ * Hit and miss counts are published as cache.gets metrics via actuator.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+  public static final String BOOKS_BY_ISBN = "booksByIsbn";
+
+  public static final String USERS_BY_USERNAME = "usersByUsername";
+
+  public static final String USER_IDS_BY_USERNAME = "userIdsByUsername";
+
+  @Bean
+  public CacheManager cacheManager(
+      @Value("${library.cache.spec:maximumSize=10000,expireAfterWrite=10m,recordStats}") String spec,
+      @Value("${library.cache.user-ids.spec:maximumSize=100000,recordStats}") String userIdsSpec) {
+    CaffeineCacheManager cacheManager = new CaffeineCacheManager(BOOKS_BY_ISBN, USERS_BY_USERNAME);
+    cacheManager.setCaffeineSpec(CaffeineSpec.parse(spec));
+    cacheManager.registerCustomCache(USER_IDS_BY_USERNAME, Caffeine.from(userIdsSpec).build());
+    return new TransactionAwareCacheManagerProxy(cacheManager);
+  }
+}
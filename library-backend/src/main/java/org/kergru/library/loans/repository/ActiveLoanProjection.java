@@ -0,0 +1,14 @@
+package org.kergru.library.loans.repository;
+
+import java.time.Instant;
+
+public interface ActiveLoanProjection {
+
+  Long getLoanId();
+
+  Long getBookId();
+
+  Long getUserId();
+
+  Instant getBorrowedAt();
+}
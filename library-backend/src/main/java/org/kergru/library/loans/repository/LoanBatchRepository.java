@@ -0,0 +1,30 @@
+package org.kergru.library.loans.repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * JDBC batch writes on the loans table. They bypass the persistence context,
+ * so no {@link LoanChangedEvent} is published by the {@link LoanEntityListener}.
+ */
+public interface LoanBatchRepository {
+
+  /**
+   * Inserts an active loan of each book in one batch. Books which are already borrowed are skipped
+   * by the unique key uk_loans_active_book instead of failing the batch.
+   *
+   * @return the ids of the inserted loans by book id
+   * @throws org.springframework.dao.DataIntegrityViolationException if a book or the user doesn't exist
+   */
+  Map<Long, Long> insertActiveLoans(Long userId, Collection<Long> bookIds, Instant borrowedAt);
+
+  /**
+   * Inserts an active loan with a single INSERT ... SELECT, which resolves user and book by their natural keys
+   * and only inserts if the book has no active loan.
+   *
+   * @return the id of the inserted loan, empty if the user or the book doesn't exist or the book is already borrowed
+   */
+  Optional<Long> insertActiveLoan(String userName, String isbn, Instant borrowedAt);
+}
@@ -0,0 +1,83 @@
+package org.kergru.library.loans.repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+class LoanBatchRepositoryImpl implements LoanBatchRepository {
+
+  private final NamedParameterJdbcTemplate jdbcTemplate;
+
+  LoanBatchRepositoryImpl(NamedParameterJdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  public Map<Long, Long> insertActiveLoans(Long userId, Collection<Long> bookIds, Instant borrowedAt) {
+    if (bookIds.isEmpty()) {
+      return Map.of();
+    }
+    Timestamp timestamp = Timestamp.from(borrowedAt);
+    SqlParameterSource[] batch = bookIds.stream()
+        .map(bookId -> new MapSqlParameterSource()
+            .addValue("userId", userId)
+            .addValue("bookId", bookId)
+            .addValue("borrowedAt", timestamp))
+        .toArray(SqlParameterSource[]::new);
+    // only conflicts on uk_loans_active_book are skipped, unlike INSERT IGNORE, which would also drop rows
+    // violating a foreign key and report them as already borrowed
+    jdbcTemplate.batchUpdate("""
+        INSERT INTO loans (user_id, book_id, borrowed_at)
+        VALUES (:userId, :bookId, :borrowedAt)
+        ON DUPLICATE KEY UPDATE id = id
+        """, batch);
+
+    // update counts are not reliable for rewritten batches, so the inserted loans are read back
+    Map<Long, Long> inserted = new HashMap<>();
+    jdbcTemplate.query("""
+        SELECT id, book_id
+        FROM loans
+        WHERE active_book_id IN (:bookIds) AND user_id = :userId AND borrowed_at = :borrowedAt
+        """,
+        new MapSqlParameterSource()
+            .addValue("bookIds", bookIds)
+            .addValue("userId", userId)
+            .addValue("borrowedAt", timestamp),
+        rs -> {
+          inserted.put(rs.getLong("book_id"), rs.getLong("id"));
+        });
+    return inserted;
+  }
+
+  @Override
+  public Optional<Long> insertActiveLoan(String userName, String isbn, Instant borrowedAt) {
+    KeyHolder keyHolder = new GeneratedKeyHolder();
+    try {
+      int inserted = jdbcTemplate.update("""
+          INSERT INTO loans (user_id, book_id, borrowed_at)
+          SELECT u.id, b.id, :borrowedAt
+          FROM users u JOIN books b ON b.isbn = :isbn
+          WHERE u.username = :userName
+            AND NOT EXISTS (SELECT 1 FROM loans l WHERE l.active_book_id = b.id)
+          """,
+          new MapSqlParameterSource()
+              .addValue("userName", userName)
+              .addValue("isbn", isbn)
+              .addValue("borrowedAt", Timestamp.from(borrowedAt)),
+          keyHolder, new String[] {"id"});
+      return inserted == 1 ? Optional.of(keyHolder.getKey().longValue()) : Optional.empty();
+    } catch (DuplicateKeyException e) {
+      // a concurrent borrow of the same book committed between the check and the insert
+      return Optional.empty();
+    }
+  }
+}
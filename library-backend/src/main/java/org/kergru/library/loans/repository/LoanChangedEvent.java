@@ -0,0 +1,11 @@
+package org.kergru.library.loans.repository;
+
+import java.time.Instant;
+
+/**
+ * Published after a loan has been inserted, updated or deleted. active is false once the book has been returned
+ * or the loan has been deleted.
+ */
+public record LoanChangedEvent(Long loanId, Long bookId, Long userId, Instant borrowedAt, boolean active) {
+
+}
@@ -2,6 +2,7 @@ package org.kergru.library.loans.repository;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
@@ -13,6 +14,7 @@ import java.time.Instant;
 import org.kergru.library.books.repository.BookEntity;
 
 @Entity
+@EntityListeners(LoanEntityListener.class)
 @Table(name = "loans")
 public class LoanEntity {
 
@@ -0,0 +1,33 @@
+package org.kergru.library.loans.repository;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * JPA entity listener which turns every write on {@link LoanEntity} into a {@link LoanChangedEvent}.
+ */
+@Component
+public class LoanEntityListener {
+
+  private final ApplicationEventPublisher eventPublisher;
+
+  public LoanEntityListener(ApplicationEventPublisher eventPublisher) {
+    this.eventPublisher = eventPublisher;
+  }
+
+  @PostPersist
+  @PostUpdate
+  public void onSaved(LoanEntity loan) {
+    eventPublisher.publishEvent(new LoanChangedEvent(
+        loan.getId(), loan.getBook().getId(), loan.getUserId(), loan.getBorrowedAt(), loan.getReturnedAt() == null));
+  }
+
+  @PostRemove
+  public void onRemoved(LoanEntity loan) {
+    eventPublisher.publishEvent(new LoanChangedEvent(
+        loan.getId(), loan.getBook().getId(), loan.getUserId(), loan.getBorrowedAt(), false));
+  }
+}
@@ -0,0 +1,18 @@
+package org.kergru.library.loans.repository;
+
+import java.time.Instant;
+import org.kergru.library.model.LoanFilter;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+/**
+ * Paged loan history of a user, read as {@link LoanSummary} projections.
+ */
+public interface LoanHistoryRepository {
+
+  /**
+   * One page of the loans of a user, newest first, optionally restricted to loans borrowed within [from, to).
+   * The sort of the pageable is ignored. The index idx_loans_user_history covers the filter, the date range and the order.
+   */
+  Page<LoanSummary> findHistory(Long userId, LoanFilter filter, Instant from, Instant to, Pageable pageable);
+}
@@ -0,0 +1,69 @@
+package org.kergru.library.loans.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import org.kergru.library.books.repository.BookEntity;
+import org.kergru.library.model.LoanFilter;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+
+class LoanHistoryRepositoryImpl implements LoanHistoryRepository {
+
+  private final EntityManager entityManager;
+
+  LoanHistoryRepositoryImpl(EntityManager entityManager) {
+    this.entityManager = entityManager;
+  }
+
+  @Override
+  public Page<LoanSummary> findHistory(Long userId, LoanFilter filter, Instant from, Instant to, Pageable pageable) {
+    CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+
+    CriteriaQuery<LoanSummary> query = cb.createQuery(LoanSummary.class);
+    Root<LoanEntity> loan = query.from(LoanEntity.class);
+    Join<LoanEntity, BookEntity> book = loan.join("book");
+    query.select(cb.construct(LoanSummary.class,
+            loan.get("id"), book.get("isbn"), book.get("title"), book.get("author"),
+            loan.get("borrowedAt"), loan.get("returnedAt")))
+        .where(history(cb, loan, userId, filter, from, to))
+        .orderBy(cb.desc(loan.get("borrowedAt")), cb.desc(loan.get("id")));
+
+    List<LoanSummary> content = entityManager.createQuery(query)
+        .setFirstResult((int) pageable.getOffset())
+        .setMaxResults(pageable.getPageSize())
+        .getResultList();
+
+    return PageableExecutionUtils.getPage(content, pageable, () -> {
+      CriteriaQuery<Long> count = cb.createQuery(Long.class);
+      Root<LoanEntity> counted = count.from(LoanEntity.class);
+      count.select(cb.count(counted)).where(history(cb, counted, userId, filter, from, to));
+      return entityManager.createQuery(count).getSingleResult();
+    });
+  }
+
+  private static Predicate[] history(
+      CriteriaBuilder cb, Root<LoanEntity> loan, Long userId, LoanFilter filter, Instant from, Instant to) {
+    List<Predicate> predicates = new ArrayList<>();
+    predicates.add(cb.equal(loan.get("userId"), userId));
+    switch (filter) {
+      case ACTIVE -> predicates.add(cb.isNull(loan.get("returnedAt")));
+      case RETURNED -> predicates.add(cb.isNotNull(loan.get("returnedAt")));
+      case ALL -> { }
+    }
+    if (from != null) {
+      predicates.add(cb.greaterThanOrEqualTo(loan.get("borrowedAt"), from));
+    }
+    if (to != null) {
+      predicates.add(cb.lessThan(loan.get("borrowedAt"), to));
+    }
+    return predicates.toArray(Predicate[]::new);
+  }
+}
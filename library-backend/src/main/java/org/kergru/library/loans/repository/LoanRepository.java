@@ -1,16 +1,61 @@
 package org.kergru.library.loans.repository;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
-public interface LoanRepository extends JpaRepository<LoanEntity, Long> {
+public interface LoanRepository extends JpaRepository<LoanEntity, Long>, LoanBatchRepository, LoanHistoryRepository {
 
-  @Query("SELECT l FROM LoanEntity l JOIN FETCH l.book WHERE l.userId = :userId")
-  List<LoanEntity> findByUserId(@Param("userId") Long userId);
+  @Query("""
+    SELECT new org.kergru.library.loans.repository.LoanSummary(l.id, b.isbn, b.title, b.author, l.borrowedAt, l.returnedAt)
+    FROM LoanEntity l JOIN l.book b
+    WHERE l.userId = :userId
+    ORDER BY l.borrowedAt DESC, l.id DESC
+  """)
+  List<LoanSummary> findSummariesByUserId(@Param("userId") Long userId);
 
-  boolean existsByBookIdAndReturnedAtIsNull(Long bookId);
-}
+  @Query("SELECT l FROM LoanEntity l JOIN FETCH l.book WHERE l.id = :id")
+  Optional<LoanEntity> findWithBookById(@Param("id") Long id);
+
+  @Query("""
+    SELECT
+        l.id as loanId,
+        l.book.id as bookId,
+        l.userId as userId,
+        l.borrowedAt as borrowedAt
+    FROM LoanEntity l
+    WHERE l.returnedAt IS NULL
+  """)
+  List<ActiveLoanProjection> findActiveLoans();
+
+  @Query("""
+    SELECT
+        l.id as loanId,
+        l.book.id as bookId,
+        l.book.isbn as isbn,
+        l.userId as userId,
+        l.borrowedAt as borrowedAt
+    FROM LoanEntity l
+    WHERE l.returnedAt IS NULL AND (l.id IN :loanIds OR l.book.isbn IN :isbns)
+  """)
+  List<ReturnableLoanProjection> findActiveLoans(@Param("loanIds") Collection<Long> loanIds, @Param("isbns") Collection<String> isbns);
 
+  /**
+   * Sets returnedAt of all loans which are still active, bypassing the persistence context and the {@link LoanEntityListener}.
+   *
+   * @return the number of returned loans
+   */
+  @Transactional
+  @Modifying
+  @Query("UPDATE LoanEntity l SET l.returnedAt = :returnedAt WHERE l.id IN :loanIds AND l.returnedAt IS NULL")
+  int returnLoans(@Param("loanIds") Collection<Long> loanIds, @Param("returnedAt") Instant returnedAt);
+
+  @Query("SELECT l.id FROM LoanEntity l WHERE l.id IN :loanIds AND l.returnedAt = :returnedAt")
+  List<Long> findReturnedAt(@Param("loanIds") Collection<Long> loanIds, @Param("returnedAt") Instant returnedAt);
+}
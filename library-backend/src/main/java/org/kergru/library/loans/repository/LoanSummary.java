@@ -0,0 +1,18 @@
+package org.kergru.library.loans.repository;
+
+import java.time.Instant;
+
+/**
+ * Loan as listed for a user, with only the book columns shown in the loan table.
+ * The full book including its description is served by the books endpoint.
+ */
+public record LoanSummary(
+    Long id,
+    String isbn,
+    String title,
+    String author,
+    Instant borrowedAt,
+    Instant returnedAt
+) {
+
+}
@@ -0,0 +1,9 @@
+package org.kergru.library.loans.repository;
+
+/**
+ * Active loan including the isbn of the borrowed book.
+ */
+public interface ReturnableLoanProjection extends ActiveLoanProjection {
+
+  String getIsbn();
+}
@@ -0,0 +1,80 @@
+package org.kergru.library.loans.service;
+
+import jakarta.annotation.PostConstruct;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import org.kergru.library.loans.repository.LoanChangedEvent;
+import org.kergru.library.loans.repository.LoanRepository;
+import org.kergru.library.model.LoanStatusDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Memory-resident map of the active loans by book id, so catalog reads don't have to join the loans table.
+ * <p>
+ * Loaded from the loans table at startup, before the application accepts requests,
+ * and kept up to date by the {@link LoanChangedEvent}s of borrowBook and returnBook after their commit.
+ */
+@Component
+public class BookAvailability {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final LoanRepository loanRepository;
+
+  private final Map<Long, ActiveLoan> activeLoans = new ConcurrentHashMap<>();
+
+  public BookAvailability(LoanRepository loanRepository) {
+    this.loanRepository = loanRepository;
+  }
+
+  @PostConstruct
+  void load() {
+    long start = System.currentTimeMillis();
+    loanRepository.findActiveLoans().forEach(l ->
+        activeLoans.put(l.getBookId(), ActiveLoan.of(l.getLoanId(), l.getUserId(), l.getBorrowedAt())));
+    logger.info("Loaded {} active loans in {} ms", activeLoans.size(), System.currentTimeMillis() - start);
+  }
+
+  @TransactionalEventListener(fallbackExecution = true)
+  @Order(Ordered.HIGHEST_PRECEDENCE) // before CatalogVersion
+  public void onLoanChanged(LoanChangedEvent event) {
+    if (event.active()) {
+      activeLoans.put(event.bookId(), ActiveLoan.of(event.loanId(), event.userId(), event.borrowedAt()));
+    } else {
+      activeLoans.computeIfPresent(event.bookId(), (bookId, loan) -> loan.loanId() == event.loanId() ? null : loan);
+    }
+  }
+
+  public Optional<ActiveLoan> activeLoan(Long bookId) {
+    return Optional.ofNullable(activeLoans.get(bookId));
+  }
+
+  public LoanStatusDto loanStatus(Long bookId) {
+    ActiveLoan loan = activeLoans.get(bookId);
+    return loan == null
+        ? new LoanStatusDto(true, null, null)
+        : new LoanStatusDto(false, loan.userId(), loan.borrowedAt());
+  }
+
+  /**
+   * Active loan of a book, borrowedAt is kept as epoch microseconds, the precision of the borrowed_at column.
+   */
+  public record ActiveLoan(long loanId, long userId, long borrowedAtMicros) {
+
+    static ActiveLoan of(long loanId, long userId, Instant borrowedAt) {
+      return new ActiveLoan(loanId, userId, ChronoUnit.MICROS.between(Instant.EPOCH, borrowedAt));
+    }
+
+    public Instant borrowedAt() {
+      return Instant.EPOCH.plus(borrowedAtMicros, ChronoUnit.MICROS);
+    }
+  }
+}
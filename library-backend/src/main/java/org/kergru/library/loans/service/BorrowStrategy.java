@@ -0,0 +1,21 @@
+package org.kergru.library.loans.service;
+
+/**
+ * SQL strategy used by {@link LoanService#borrowBook(String, String)}, configured by library.loans.borrow-strategy.
+ */
+public enum BorrowStrategy {
+
+  /**
+   * Looks up user and book by their natural keys (usually cached) and saves a {@link org.kergru.library.loans.repository.LoanEntity},
+   * the unique key uk_loans_active_book rejects the insert if the book is already borrowed.
+   */
+  ENTITY,
+
+  /**
+   * One INSERT ... SELECT resolving user and book by their natural keys, the affected row count tells success or conflict.
+   * The loan is read back by its id for the response.
+   * Needs innodb_autoinc_lock_mode = 2 (the default since MySQL 8.0), otherwise INSERT ... SELECT locks the auto-increment
+   * of the loans table until the end of the statement.
+   */
+  INSERT_SELECT
+}
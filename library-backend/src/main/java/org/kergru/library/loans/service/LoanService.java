@@ -1,73 +1,298 @@
 package org.kergru.library.loans.service;
 
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import org.hibernate.exception.ConstraintViolationException;
 import org.kergru.library.books.repository.BookEntity;
 import org.kergru.library.books.repository.BookRepository;
 import org.kergru.library.books.service.BookService;
+import org.kergru.library.loans.repository.LoanChangedEvent;
 import org.kergru.library.loans.repository.LoanEntity;
 import org.kergru.library.loans.repository.LoanRepository;
+import org.kergru.library.loans.repository.LoanSummary;
+import org.kergru.library.loans.repository.ReturnableLoanProjection;
+import org.kergru.library.model.BookDto;
+import org.kergru.library.model.BorrowResultDto;
+import org.kergru.library.model.BorrowResultDto.Status;
 import org.kergru.library.model.LoanDto;
-import org.kergru.library.users.repository.UserEntity;
+import org.kergru.library.model.LoanFilter;
+import org.kergru.library.model.PageResponseDto;
+import org.kergru.library.model.ReturnRequestDto;
+import org.kergru.library.model.ReturnResultDto;
 import org.kergru.library.users.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 @Service
 public class LoanService {
 
+  private static final String ACTIVE_LOAN_CONSTRAINT = "uk_loans_active_book";
+
+  private static final int MAX_INSERT_ATTEMPTS = 3;
+
+  private static final int MAX_BATCH_SIZE = 100;
+
+  private static final int MAX_HISTORY_PAGE_SIZE = 100;
+
   private final LoanRepository loanRepository;
 
   private final UserRepository userRepository;
 
   private final BookRepository bookRepository;
 
+  private final ApplicationEventPublisher eventPublisher;
+
+  private final BorrowStrategy borrowStrategy;
+
   public LoanService(
       LoanRepository loanRepository,
       UserRepository userRepository,
-      BookRepository bookRepository
+      BookRepository bookRepository,
+      ApplicationEventPublisher eventPublisher,
+      @Value("${library.loans.borrow-strategy:entity}") BorrowStrategy borrowStrategy
   ) {
     this.loanRepository = loanRepository;
     this.userRepository = userRepository;
     this.bookRepository = bookRepository;
+    this.eventPublisher = eventPublisher;
+    this.borrowStrategy = borrowStrategy;
   }
 
   public List<LoanDto> findBorrowedByUser(String userName) {
-    Optional<UserEntity> user = userRepository.findByUsername(userName);
-    return user.map(u -> loanRepository.findByUserId(u.getId()).stream().map(this::toDto).toList()).orElse(List.of());
+    Optional<Long> userId = userRepository.findIdByUsername(userName);
+    return userId.map(id -> loanRepository.findSummariesByUserId(id).stream().map(LoanService::toDto).toList()).orElse(List.of());
   }
 
+  /**
+   * One page of the loans of a user, newest first, optionally restricted to loans borrowed within [from, to).
+   * Only the loans of the page are loaded, as summaries without the book description.
+   */
+  public PageResponseDto<LoanDto> findLoanHistory(
+      String userName, LoanFilter filter, Instant from, Instant to, int page, int size) {
+    if (page < 0 || size < 1 || size > MAX_HISTORY_PAGE_SIZE) {
+      throw new IllegalArgumentException("page must be >= 0 and size between 1 and " + MAX_HISTORY_PAGE_SIZE);
+    }
+    if (from != null && to != null && !from.isBefore(to)) {
+      throw new IllegalArgumentException("from must be before to");
+    }
+
+    Optional<Long> userId = userRepository.findIdByUsername(userName);
+    if (userId.isEmpty()) {
+      return new PageResponseDto<>(List.of(), page, size, 0, 0, page == 0, true, 0, true);
+    }
+
+    Page<LoanSummary> loans = loanRepository.findHistory(userId.get(), filter, from, to, PageRequest.of(page, size));
+    return new PageResponseDto<>(
+        loans.getContent().stream().map(LoanService::toDto).toList(),
+        loans.getNumber(),
+        loans.getSize(),
+        loans.getTotalPages(),
+        loans.getTotalElements(),
+        loans.isFirst(),
+        loans.isLast(),
+        loans.getNumberOfElements(),
+        loans.isEmpty());
+  }
+
+  /**
+   * Borrows a book with the configured {@link BorrowStrategy}.
+   *
+   * @throws java.util.NoSuchElementException if the user or the book doesn't exist
+   * @throws IllegalStateException if the book is already borrowed
+   */
   public LoanDto borrowBook(String isbn, String userName) {
-    UserEntity user = userRepository.findByUsername(userName).orElseThrow();
+    return borrowStrategy == BorrowStrategy.INSERT_SELECT
+        ? borrowBookWithInsertSelect(isbn, userName)
+        : borrowBookWithEntity(isbn, userName);
+  }
+
+  /**
+   * Borrows a book with a single insert, user id and book are usually served from the cache.
+   * There is no check for an active loan upfront, the unique key uk_loans_active_book of the loans table
+   * rejects the insert if the book is already borrowed, also if two users borrow the same book concurrently.
+   */
+  private LoanDto borrowBookWithEntity(String isbn, String userName) {
+    Long userId = userRepository.findIdByUsername(userName).orElseThrow();
     BookEntity book = bookRepository.findByIsbn(isbn).orElseThrow();
 
-    if(isBorrowed(book)) {
+    try {
+      return retryOnDeadlock(() -> {
+        LoanEntity loan = new LoanEntity();
+        loan.setBook(book);
+        loan.setUserId(userId);
+        loan.setBorrowedAt(Instant.now());
+        return toDto(loanRepository.save(loan));
+      });
+    } catch (DataIntegrityViolationException e) {
+      if (isActiveLoanConflict(e)) {
+        throw new IllegalStateException("Book is already borrowed");
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Borrows a book with one conditional INSERT ... SELECT, a successful borrow reads the loan back by its primary key.
+   * Only if nothing has been inserted, user and book are looked up to tell a missing user or book from a conflict.
+   */
+  private LoanDto borrowBookWithInsertSelect(String isbn, String userName) {
+    Instant borrowedAt = Instant.now().truncatedTo(ChronoUnit.MICROS); // precision of borrowed_at
+    Optional<Long> loanId = retryOnDeadlock(() -> loanRepository.insertActiveLoan(userName, isbn, borrowedAt));
+    if (loanId.isEmpty()) {
+      userRepository.findIdByUsername(userName).orElseThrow();
+      bookRepository.findByIsbn(isbn).orElseThrow();
       throw new IllegalStateException("Book is already borrowed");
-    } else {
-      LoanEntity loan = new LoanEntity();
-      loan.setBook(book);
-      loan.setUserId(user.getId());
-      loan.setBorrowedAt(Instant.now());
+    }
+
+    LoanEntity loan = loanRepository.findWithBookById(loanId.get()).orElseThrow();
+    eventPublisher.publishEvent(new LoanChangedEvent(loan.getId(), loan.getBook().getId(), loan.getUserId(), borrowedAt, true));
+    return toDto(loan);
+  }
 
-      loanRepository.save(loan);
-      return toDto(loan);
+  /**
+   * Borrows several books at once: the user is resolved once, the books are read with one query
+   * and the loans are inserted in one JDBC batch. Books already borrowed are reported per isbn instead of failing the batch.
+   */
+  public List<BorrowResultDto> borrowBooks(List<String> isbns, String userName) {
+    if (isbns.size() > MAX_BATCH_SIZE) {
+      throw new IllegalArgumentException("At most " + MAX_BATCH_SIZE + " books can be borrowed at once");
     }
+    Long userId = userRepository.findIdByUsername(userName).orElseThrow();
+    Set<String> distinctIsbns = new LinkedHashSet<>(isbns);
+    Map<String, BookEntity> books = bookRepository.findByIsbnIn(distinctIsbns).stream()
+        .collect(Collectors.toMap(BookEntity::getIsbn, Function.identity()));
+
+    Instant borrowedAt = Instant.now().truncatedTo(ChronoUnit.MICROS); // precision of borrowed_at
+    List<Long> bookIds = books.values().stream().map(BookEntity::getId).toList();
+    Map<Long, Long> loanIds = retryOnDeadlock(() -> loanRepository.insertActiveLoans(userId, bookIds, borrowedAt));
+
+    List<BorrowResultDto> results = new ArrayList<>(distinctIsbns.size());
+    for (String isbn : distinctIsbns) {
+      BookEntity book = books.get(isbn);
+      Long loanId = book == null ? null : loanIds.get(book.getId());
+      if (book == null) {
+        results.add(BorrowResultDto.failed(isbn, Status.NOT_FOUND));
+      } else if (loanId == null) {
+        results.add(BorrowResultDto.failed(isbn, Status.ALREADY_BORROWED));
+      } else {
+        eventPublisher.publishEvent(new LoanChangedEvent(loanId, book.getId(), userId, borrowedAt, true));
+        results.add(BorrowResultDto.borrowed(new LoanDto(loanId, BookService.toDto(book), borrowedAt, null)));
+      }
+    }
+    return results;
   }
 
   public void returnBook(Long loanId, String userName) {
     LoanEntity loan = loanRepository.findById(loanId).orElseThrow();
-    if(!loan.getUserId().equals(userRepository.findByUsername(userName).orElseThrow().getId())) {
+    if(!loan.getUserId().equals(userRepository.findIdByUsername(userName).orElseThrow())) {
       throw new IllegalStateException("User is not the owner of the loan");
     }
     loan.setReturnedAt(Instant.now());
     loanRepository.save(loan);
   }
 
-  private boolean isBorrowed(BookEntity book) {
-    return loanRepository.existsByBookIdAndReturnedAtIsNull(book.getId());
+  /**
+   * Returns the active loans of all items at once, for the check-in desk of the librarian.
+   * The loans are read with one query and closed with one bulk update, the outcome is reported per item.
+   */
+  public List<ReturnResultDto> returnBooks(ReturnRequestDto request) {
+    if (request.loanIds().size() + request.isbns().size() > MAX_BATCH_SIZE) {
+      throw new IllegalArgumentException("At most " + MAX_BATCH_SIZE + " books can be returned at once");
+    }
+    List<ReturnableLoanProjection> activeLoans = request.loanIds().isEmpty() && request.isbns().isEmpty()
+        ? List.of()
+        : loanRepository.findActiveLoans(request.loanIds(), request.isbns());
+    Map<Long, ReturnableLoanProjection> byLoanId = activeLoans.stream()
+        .collect(Collectors.toMap(ReturnableLoanProjection::getLoanId, Function.identity()));
+    Map<String, ReturnableLoanProjection> byIsbn = activeLoans.stream()
+        .collect(Collectors.toMap(ReturnableLoanProjection::getIsbn, Function.identity()));
+
+    Instant returnedAt = Instant.now().truncatedTo(ChronoUnit.MICROS); // precision of returned_at
+    Set<Long> returned = new HashSet<>(byLoanId.keySet());
+    if (!returned.isEmpty() && loanRepository.returnLoans(returned, returnedAt) < returned.size()) {
+      // some of the loans have been returned concurrently
+      returned = new HashSet<>(loanRepository.findReturnedAt(returned, returnedAt));
+    }
+
+    List<ReturnResultDto> results = new ArrayList<>(request.loanIds().size() + request.isbns().size());
+    for (Long loanId : request.loanIds()) {
+      ReturnableLoanProjection loan = byLoanId.get(loanId);
+      results.add(loan != null && returned.contains(loanId)
+          ? new ReturnResultDto(loanId, loan.getIsbn(), ReturnResultDto.Status.RETURNED)
+          : new ReturnResultDto(loanId, null, ReturnResultDto.Status.NOT_BORROWED));
+    }
+    Set<String> unknownIsbns = new HashSet<>(request.isbns());
+    unknownIsbns.removeAll(byIsbn.keySet());
+    if (!unknownIsbns.isEmpty()) {
+      bookRepository.findByIsbnIn(unknownIsbns).forEach(book -> unknownIsbns.remove(book.getIsbn()));
+    }
+    for (String isbn : request.isbns()) {
+      ReturnableLoanProjection loan = byIsbn.get(isbn);
+      if (loan != null && returned.contains(loan.getLoanId())) {
+        results.add(new ReturnResultDto(loan.getLoanId(), isbn, ReturnResultDto.Status.RETURNED));
+      } else {
+        results.add(new ReturnResultDto(null, isbn,
+            unknownIsbns.contains(isbn) ? ReturnResultDto.Status.NOT_FOUND : ReturnResultDto.Status.NOT_BORROWED));
+      }
+    }
+
+    for (Long loanId : returned) {
+      ReturnableLoanProjection loan = byLoanId.get(loanId);
+      eventPublisher.publishEvent(new LoanChangedEvent(loanId, loan.getBookId(), loan.getUserId(), loan.getBorrowedAt(), false));
+    }
+    return results;
+  }
+
+  /**
+   * InnoDB may report concurrent inserts of the same unique key as deadlock, the retry sees the committed loan.
+   */
+  private static <T> T retryOnDeadlock(Supplier<T> insert) {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return insert.get();
+      } catch (PessimisticLockingFailureException e) {
+        if (attempt == MAX_INSERT_ATTEMPTS) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  /**
+   * MySQL 8.0.19+ reports the unique key qualified by the table name (loans.uk_loans_active_book), MariaDB without it.
+   */
+  private static boolean isActiveLoanConflict(DataIntegrityViolationException e) {
+    if (!(e.getCause() instanceof ConstraintViolationException cve) || cve.getConstraintName() == null) {
+      return false;
+    }
+    String constraintName = cve.getConstraintName();
+    return ACTIVE_LOAN_CONSTRAINT.equalsIgnoreCase(constraintName.substring(constraintName.lastIndexOf('.') + 1));
   }
 
   private LoanDto toDto(LoanEntity e) {
     return new LoanDto(e.getId(), BookService.toDto(e.getBook()), e.getBorrowedAt(), e.getReturnedAt());
   }
+
+  /**
+   * Loan listing entry, the book carries only isbn, title and author.
+   */
+  private static LoanDto toDto(LoanSummary s) {
+    BookDto book = new BookDto(s.isbn(), s.title(), s.author(), null, null, null, null, null, null);
+    return new LoanDto(s.id(), book, s.borrowedAt(), s.returnedAt());
+  }
 }
@@ -0,0 +1,31 @@
+package org.kergru.library.search;
+
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.hibernate.boot.model.FunctionContributions;
+import org.hibernate.boot.model.FunctionContributor;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * Registers MATCH ... AGAINST in boolean mode as HQL/criteria functions match_against_1 to match_against_4,
+ * the number is the count of columns. The last argument is the boolean mode query.
+ * Registered via META-INF/services.
+ */
+public class FullTextFunctionContributor implements FunctionContributor {
+
+  static final String FUNCTION_PREFIX = "match_against_";
+
+  static final int MAX_COLUMNS = 4;
+
+  @Override
+  public void contributeFunctions(FunctionContributions functionContributions) {
+    var relevance = functionContributions.getTypeConfiguration().getBasicTypeRegistry().resolve(StandardBasicTypes.DOUBLE);
+    for (int columns = 1; columns <= MAX_COLUMNS; columns++) {
+      String columnArgs = IntStream.rangeClosed(1, columns).mapToObj(i -> "?" + i).collect(Collectors.joining(", "));
+      functionContributions.getFunctionRegistry().registerPattern(
+          FUNCTION_PREFIX + columns,
+          "match(" + columnArgs + ") against(?" + (columns + 1) + " in boolean mode)",
+          relevance);
+    }
+  }
+}
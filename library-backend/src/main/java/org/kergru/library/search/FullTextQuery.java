@@ -0,0 +1,53 @@
+package org.kergru.library.search;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Predicate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Builds MySQL boolean mode queries for MATCH ... AGAINST from a user entered search string.
+ */
+public final class FullTextQuery {
+
+  // same word characters as the InnoDB full text parser, '_' belongs to the word
+  private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}_]+");
+
+  // innodb_ft_min_token_size, shorter words are not in the index and a required one would never match
+  private static final int MIN_TOKEN_SIZE = 3;
+
+  private FullTextQuery() {
+  }
+
+  /**
+   * Every word of the search string is required and matched as prefix, e.g. "Clean Cod" becomes "+clean* +cod*".
+   * Boolean mode operators and words shorter than the minimum token size are dropped.
+   * Returns an empty string if no word is left, the caller has to fall back to LIKE then.
+   */
+  public static String booleanMode(String searchString) {
+    return WORD_SEPARATOR.splitAsStream(searchString.toLowerCase(Locale.ROOT))
+        .filter(word -> word.length() >= MIN_TOKEN_SIZE)
+        .map(word -> "+" + word + "*")
+        .collect(Collectors.joining(" "));
+  }
+
+  /**
+   * Criteria predicate for MATCH(columns) AGAINST(query IN BOOLEAN MODE), the columns have to be those of a FULLTEXT index.
+   *
+   * @see FullTextFunctionContributor
+   */
+  public static Predicate matches(CriteriaBuilder cb, String booleanModeQuery, Expression<?>... columns) {
+    if (columns.length == 0 || columns.length > FullTextFunctionContributor.MAX_COLUMNS) {
+      throw new IllegalArgumentException("Unsupported number of columns: " + columns.length);
+    }
+    List<Expression<?>> args = new ArrayList<>(List.of(columns));
+    args.add(cb.literal(booleanModeQuery));
+    Expression<Double> relevance = cb.function(
+        FullTextFunctionContributor.FUNCTION_PREFIX + columns.length, Double.class, args.toArray(Expression[]::new));
+    return cb.greaterThan(relevance, 0.0);
+  }
+}
@@ -0,0 +1,82 @@
+package org.kergru.library.search;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reads only the given attributes of the entities matching a specification, as tuples instead of managed entities.
+ * Each tuple element is aliased with its attribute name.
+ * <p>
+ * Used by the searches, so a page in the summary view neither selects nor hydrates the columns it doesn't return.
+ */
+@Component
+public class ProjectedSearch {
+
+  private final EntityManager entityManager;
+
+  public ProjectedSearch(EntityManager entityManager) {
+    this.entityManager = entityManager;
+  }
+
+  /**
+   * Page with total, the count query is skipped if the total is known from the page itself.
+   */
+  public <T> Page<Tuple> findPage(Class<T> type, Specification<T> spec, Collection<String> attributes, Pageable pageable) {
+    List<Tuple> content = find(type, spec, attributes, pageable.getSort(), pageable.getOffset(), pageable.getPageSize());
+    return PageableExecutionUtils.getPage(content, pageable, () -> count(type, spec));
+  }
+
+  /**
+   * Reads size + 1 rows to find out if there is a next page, without the count query.
+   */
+  public <T> Slice<Tuple> findSlice(Class<T> type, Specification<T> spec, Collection<String> attributes, Pageable pageable) {
+    List<Tuple> rows = find(type, spec, attributes, pageable.getSort(), pageable.getOffset(), pageable.getPageSize() + 1);
+    boolean hasNext = rows.size() > pageable.getPageSize();
+    return new SliceImpl<>(hasNext ? rows.subList(0, pageable.getPageSize()) : rows, pageable, hasNext);
+  }
+
+  public <T> List<Tuple> find(
+      Class<T> type, Specification<T> spec, Collection<String> attributes, Sort sort, long offset, int limit) {
+    CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+    CriteriaQuery<Tuple> query = cb.createTupleQuery();
+    Root<T> root = query.from(type);
+    query.multiselect(attributes.stream().<Selection<?>>map(a -> root.get(a).alias(a)).toList());
+    Predicate predicate = spec.toPredicate(root, query, cb);
+    if (predicate != null) {
+      query.where(predicate);
+    }
+    query.orderBy(QueryUtils.toOrders(sort, root, cb));
+    return entityManager.createQuery(query)
+        .setFirstResult((int) offset)
+        .setMaxResults(limit)
+        .getResultList();
+  }
+
+  public <T> long count(Class<T> type, Specification<T> spec) {
+    CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+    CriteriaQuery<Long> query = cb.createQuery(Long.class);
+    Root<T> root = query.from(type);
+    query.select(cb.count(root));
+    Predicate predicate = spec.toPredicate(root, query, cb);
+    if (predicate != null) {
+      query.where(predicate);
+    }
+    return entityManager.createQuery(query).getSingleResult();
+  }
+}
@@ -0,0 +1,63 @@
+package org.kergru.library.search;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Number of matches per search string, used for {@link org.kergru.library.model.TotalMode#CACHED}.
+ * Counts are kept per scope (e.g. "books", "users") until the scope is invalidated because its table changed.
+ */
+@Component
+public class SearchCountCache {
+
+  private final int maxEntriesPerScope;
+
+  private final Map<String, Map<String, Long>> scopes = new ConcurrentHashMap<>();
+
+  public SearchCountCache(@Value("${library.search.count-cache.max-entries:1000}") int maxEntriesPerScope) {
+    this.maxEntriesPerScope = maxEntriesPerScope;
+  }
+
+  /**
+   * Looks up the count of a search string. A count put into the returned entry after the scope
+   * has been invalidated is dropped, so a count from before a change can't overwrite the invalidation.
+   */
+  public Entry lookup(String scope, String searchString) {
+    return new Entry(scopes.computeIfAbsent(scope, s -> new ConcurrentHashMap<>()), normalize(searchString));
+  }
+
+  public void invalidate(String scope) {
+    scopes.remove(scope);
+  }
+
+  private static String normalize(String searchString) {
+    return searchString == null ? "" : searchString.strip().toLowerCase(Locale.ROOT);
+  }
+
+  public final class Entry {
+
+    private final Map<String, Long> counts;
+
+    private final String key;
+
+    private Entry(Map<String, Long> counts, String key) {
+      this.counts = counts;
+      this.key = key;
+    }
+
+    public Optional<Long> get() {
+      return Optional.ofNullable(counts.get(key));
+    }
+
+    public void put(long count) {
+      if (counts.size() >= maxEntriesPerScope) {
+        counts.clear();
+      }
+      counts.put(key, count);
+    }
+  }
+}
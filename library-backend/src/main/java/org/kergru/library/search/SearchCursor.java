@@ -0,0 +1,53 @@
+package org.kergru.library.search;
+
+import jakarta.persistence.criteria.Path;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import org.springframework.data.jpa.domain.Specification;
+
+/**
+ * Position in a search result for keyset pagination: sort attribute, its value and the id of the last element returned.
+ * Clients only see the opaque string from {@link #encode()}.
+ */
+public record SearchCursor(String sortBy, String key, Long id) {
+
+  private static final String SEPARATOR = ":";
+
+  public String encode() {
+    String raw = sortBy + SEPARATOR + id + SEPARATOR + key;
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @throws IllegalArgumentException if the cursor was not created by {@link #encode()}
+   */
+  public static SearchCursor decode(String cursor) {
+    try {
+      String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(SEPARATOR, 3);
+      return new SearchCursor(parts[0], parts[2], Long.valueOf(parts[1]));
+    } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+    }
+  }
+
+  /**
+   * Restricts a query ordered by (sortAttribute, id) to the elements after this cursor.
+   */
+  public <T> Specification<T> after(String sortAttribute) {
+    return (root, query, cb) -> {
+      Path<Comparable<Object>> sortPath = root.get(sortAttribute);
+      Comparable<Object> sortKey = keyAs(sortPath.getJavaType());
+      return cb.or(
+          cb.greaterThan(sortPath, sortKey),
+          cb.and(cb.equal(sortPath, sortKey), cb.greaterThan(root.get("id"), id)));
+    };
+  }
+
+  @SuppressWarnings("unchecked")
+  private Comparable<Object> keyAs(Class<?> type) {
+    if (type == Integer.class) {
+      return (Comparable<Object>) (Comparable<?>) Integer.valueOf(key);
+    }
+    return (Comparable<Object>) (Comparable<?>) key;
+  }
+}
@@ -0,0 +1,17 @@
+package org.kergru.library.search;
+
+/**
+ * SQL strategy used to filter books and users by a search string, configured by library.search.mode.
+ */
+public enum SearchMode {
+
+  /**
+   * LIKE %searchString% on every searchable column, needs a full table scan.
+   */
+  LIKE,
+
+  /**
+   * MATCH ... AGAINST on the InnoDB FULLTEXT indexes, matches words by prefix.
+   */
+  FULLTEXT
+}
@@ -0,0 +1,114 @@
+package org.kergru.library.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collection;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+/**
+ * Caches the validated {@link Jwt} of a token and its granted authorities until the token expires,
+ * so the signature check and the authority mapping run once per token instead of once per request.
+ * <p>
+ * Tokens are keyed by their SHA-256 digest, tokens without exp and failed validations are not cached.
+ * Hit and miss counts are published as cache.gets metrics with the tag cache=validatedJwts.
+ */
+public class CachingJwtDecoder implements JwtDecoder {
+
+  public static final String CACHE_NAME = "validatedJwts";
+
+  private final JwtDecoder delegate;
+
+  private final Clock clock;
+
+  private final Cache<String, CachedJwt> cache;
+
+  public CachingJwtDecoder(JwtDecoder delegate, long maximumSize, Clock clock) {
+    this.delegate = delegate;
+    this.clock = clock;
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfter(Expiry.creating((String digest, CachedJwt cached) -> Duration.between(clock.instant(), cached.jwt.getExpiresAt())))
+        .recordStats()
+        .build();
+  }
+
+  public CachingJwtDecoder bindTo(MeterRegistry meterRegistry) {
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    return this;
+  }
+
+  @Override
+  public Jwt decode(String token) throws JwtException {
+    String digest = digest(token);
+    CachedJwt cached = cache.getIfPresent(digest);
+    if (cached != null) {
+      return cached.jwt;
+    }
+
+    Jwt jwt = delegate.decode(token);
+    Instant expiresAt = jwt.getExpiresAt();
+    if (expiresAt != null && expiresAt.isAfter(clock.instant())) {
+      cache.put(digest, new CachedJwt(jwt));
+    }
+    return jwt;
+  }
+
+  /**
+   * Wraps the authorities converter of the {@link org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter},
+   * the authorities of a cached token are mapped once.
+   */
+  public Converter<Jwt, Collection<GrantedAuthority>> cachingAuthorities(Converter<Jwt, Collection<GrantedAuthority>> authoritiesConverter) {
+    return jwt -> {
+      CachedJwt cached = cache.getIfPresent(digest(jwt.getTokenValue()));
+      if (cached == null || cached.jwt != jwt) {
+        return authoritiesConverter.convert(jwt);
+      }
+      Collection<GrantedAuthority> authorities = cached.authorities;
+      if (authorities == null) {
+        authorities = authoritiesConverter.convert(jwt);
+        cached.authorities = authorities;
+      }
+      return authorities;
+    };
+  }
+
+  long size() {
+    cache.cleanUp();
+    return cache.estimatedSize();
+  }
+
+  private static String digest(String token) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+      return Base64.getEncoder().encodeToString(hash);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e); // every JVM has SHA-256
+    }
+  }
+
+  private static final class CachedJwt {
+
+    private final Jwt jwt;
+
+    // mapped on the first request, a concurrent first request may map them twice
+    private volatile Collection<GrantedAuthority> authorities;
+
+    private CachedJwt(Jwt jwt) {
+      this.jwt = jwt;
+    }
+  }
+}
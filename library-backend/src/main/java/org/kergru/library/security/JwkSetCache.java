@@ -0,0 +1,156 @@
+package org.kergru.library.security;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * JWK set of the issuer, loaded at startup before the application accepts requests and refreshed in the background,
+ * so no request has to wait for the jwk-set-uri.
+ * <p>
+ * A failed refresh keeps the current keys, they are served until they are older than maxStale.
+ * A token signed with an unknown kid (e.g. after a key rotation) or missing keys trigger a refresh by the request,
+ * at most once per minRefreshInterval.
+ * Refreshes are timed as library.jwks.refresh (tag outcome), unknown kids are counted as library.jwks.unknown.kid.
+ */
+public class JwkSetCache implements JWKSource<SecurityContext> {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final URI jwkSetUri;
+
+  private final Duration refreshInterval;
+
+  private final Duration timeout;
+
+  private final Duration maxStale;
+
+  private final Duration minRefreshInterval;
+
+  private final HttpClient httpClient;
+
+  private final ScheduledExecutorService scheduler;
+
+  private final Timer refreshSuccess;
+
+  private final Timer refreshFailure;
+
+  private final Counter unknownKid;
+
+  private volatile Keys keys; // null until the first successful load
+
+  private volatile Instant lastAttempt = Instant.MIN;
+
+  public JwkSetCache(
+      URI jwkSetUri, Duration refreshInterval, Duration timeout, Duration maxStale, Duration minRefreshInterval,
+      MeterRegistry meterRegistry) {
+    this.jwkSetUri = jwkSetUri;
+    this.refreshInterval = refreshInterval;
+    this.timeout = timeout;
+    this.maxStale = maxStale;
+    this.minRefreshInterval = minRefreshInterval;
+    this.httpClient = HttpClient.newBuilder().connectTimeout(timeout).build();
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("jwks-refresh").daemon().factory());
+    this.refreshSuccess = Timer.builder("library.jwks.refresh").tag("outcome", "success").register(meterRegistry);
+    this.refreshFailure = Timer.builder("library.jwks.refresh").tag("outcome", "failure").register(meterRegistry);
+    this.unknownKid = Counter.builder("library.jwks.unknown.kid").register(meterRegistry);
+  }
+
+  /**
+   * Loads the keys and schedules the refresh. An unreachable issuer doesn't fail the startup,
+   * the keys are loaded by the next refresh or the first request then.
+   */
+  @PostConstruct
+  public void start() {
+    refresh(Instant.now());
+    long interval = refreshInterval.toMillis();
+    scheduler.scheduleWithFixedDelay(() -> refresh(Instant.now()), interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void stop() {
+    scheduler.shutdownNow();
+  }
+
+  @Override
+  public List<JWK> get(JWKSelector selector, SecurityContext context) throws KeySourceException {
+    Keys current = keys;
+    if (isStale(current)) {
+      current = refresh(Instant.now().minus(minRefreshInterval));
+      if (isStale(current)) {
+        throw new KeySourceException("No current JWK set of " + jwkSetUri);
+      }
+    }
+
+    List<JWK> matches = selector.select(current.jwkSet);
+    if (matches.isEmpty() && !selector.getMatcher().getKeyIDs().isEmpty()) {
+      unknownKid.increment();
+      Keys refreshed = refresh(Instant.now().minus(minRefreshInterval));
+      if (refreshed != current) {
+        matches = selector.select(refreshed.jwkSet);
+      }
+    }
+    return matches;
+  }
+
+  private boolean isStale(Keys keys) {
+    return keys == null || keys.loadedAt.plus(maxStale).isBefore(Instant.now());
+  }
+
+  /**
+   * Fetches the JWK set unless it has been fetched after notAttemptedSince, concurrent callers wait for the running fetch.
+   *
+   * @return the current keys, the previous ones if the fetch failed
+   */
+  synchronized Keys refresh(Instant notAttemptedSince) {
+    if (lastAttempt.isAfter(notAttemptedSince)) {
+      return keys;
+    }
+    Instant start = Instant.now();
+    lastAttempt = start;
+    long startNanos = System.nanoTime();
+    try {
+      HttpResponse<String> response = httpClient.send(
+          HttpRequest.newBuilder(jwkSetUri).timeout(timeout).header("Accept", "application/json").GET().build(),
+          HttpResponse.BodyHandlers.ofString());
+      if (response.statusCode() != 200) {
+        throw new IOException("HTTP " + response.statusCode());
+      }
+      keys = new Keys(JWKSet.parse(response.body()), start);
+      refreshSuccess.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+      logger.debug("Loaded {} keys from {}", keys.jwkSet.size(), jwkSetUri);
+    } catch (IOException | ParseException e) {
+      refreshFailure.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+      logger.warn("Failed to load JWK set from {}, keeping the keys loaded at {}: {}",
+          jwkSetUri, keys == null ? "-" : keys.loadedAt, e.toString());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return keys;
+  }
+
+  record Keys(JWKSet jwkSet, Instant loadedAt) {
+  }
+}
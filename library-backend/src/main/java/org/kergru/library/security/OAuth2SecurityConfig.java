@@ -1,9 +1,25 @@
 package org.kergru.library.security;
 
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Map;
-import org.kergru.library.security.logging.JwtLoggingFilter;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.kergru.library.security.logging.RequestLog;
+import org.kergru.library.security.logging.RequestLogFilter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBooleanProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.security.oauth2.resource.OAuth2ResourceServerProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
@@ -12,6 +28,8 @@ import org.springframework.security.config.annotation.web.configuration.EnableWe
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
 import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
 import org.springframework.security.oauth2.server.resource.web.authentication.BearerTokenAuthenticationFilter;
@@ -33,8 +51,12 @@ import org.springframework.security.web.SecurityFilterChain;
  *   <li>Token expiration time</li>
  *   <li>Token issuer claim</li>
  * </ul>
+ * The keys are kept by the {@link JwkSetCache}, the validated tokens and their authorities are cached
+ * by the {@link CachingJwtDecoder} until they expire.
+ * Not active without web application, e.g. for the command line book import.
  */
 @Configuration
+@ConditionalOnWebApplication
 @EnableWebSecurity
 @EnableMethodSecurity
 public class OAuth2SecurityConfig {
@@ -42,13 +64,20 @@ public class OAuth2SecurityConfig {
   @Bean
   public SecurityFilterChain securityFilterChain(
       HttpSecurity http,
-      JwtAuthenticationConverter jwtAuthenticationConverter) throws Exception {
+      JwtAuthenticationConverter jwtAuthenticationConverter,
+      ObjectProvider<RequestLog> requestLog,
+      @Value("${library.request-log.sample-rate:100}") int sampleRate,
+      @Value("${library.request-log.slow-threshold:1s}") Duration slowThreshold) throws Exception {
+
+    // without request log the filter isn't part of the chain at all
+    requestLog.ifAvailable(log ->
+        http.addFilterAfter(new RequestLogFilter(log, sampleRate, slowThreshold), BearerTokenAuthenticationFilter.class));
 
     return http
         .csrf(AbstractHttpConfigurer::disable) //server-to-server communication, token secured
-        .addFilterAfter(new JwtLoggingFilter(), BearerTokenAuthenticationFilter.class)
         .authorizeHttpRequests(auth -> auth
-            .requestMatchers("/actuator/**").permitAll()
+            .requestMatchers("/actuator/health", "/actuator/health/**").permitAll()
+            .requestMatchers("/actuator/**").hasRole("LIBRARIAN") // metrics tell about users and books
             .anyRequest().authenticated()
         )
         .oauth2ResourceServer(oauth2 -> oauth2
@@ -59,16 +88,56 @@ public class OAuth2SecurityConfig {
         .build();
   }
 
+  @Bean
+  @ConditionalOnBooleanProperty("library.request-log.enabled")
+  public RequestLog requestLog(@Value("${library.request-log.queue-capacity:10000}") int queueCapacity, MeterRegistry meterRegistry) {
+    return new RequestLog(queueCapacity, meterRegistry);
+  }
+
+  @Bean
+  public JwkSetCache jwkSetCache(
+      OAuth2ResourceServerProperties properties,
+      MeterRegistry meterRegistry,
+      @Value("${library.security.jwks.refresh-interval:5m}") Duration refreshInterval,
+      @Value("${library.security.jwks.timeout:2s}") Duration timeout,
+      @Value("${library.security.jwks.max-stale:1h}") Duration maxStale,
+      @Value("${library.security.jwks.min-refresh-interval:30s}") Duration minRefreshInterval) {
+    return new JwkSetCache(URI.create(properties.getJwt().getJwkSetUri()), refreshInterval, timeout, maxStale, minRefreshInterval,
+        meterRegistry);
+  }
+
+  /**
+   * Decoder of the issuer-uri and jws-algorithms properties like the one of Spring Boot, with the keys of the {@link JwkSetCache}
+   * and wrapped by the token cache.
+   */
+  @Bean
+  public CachingJwtDecoder jwtDecoder(
+      OAuth2ResourceServerProperties properties,
+      JwkSetCache jwkSetCache,
+      MeterRegistry meterRegistry,
+      @Value("${library.security.jwt-cache.max-size:10000}") long maxSize) {
+    OAuth2ResourceServerProperties.Jwt jwt = properties.getJwt();
+    Set<JWSAlgorithm> algorithms = jwt.getJwsAlgorithms().stream().map(JWSAlgorithm::parse).collect(Collectors.toSet());
+    DefaultJWTProcessor<SecurityContext> processor = new DefaultJWTProcessor<>();
+    processor.setJWSKeySelector(new JWSVerificationKeySelector<>(algorithms, jwkSetCache));
+    processor.setJWTClaimsSetVerifier((claims, context) -> { }); // claims are validated by the JwtValidators
+    NimbusJwtDecoder decoder = new NimbusJwtDecoder(processor);
+    decoder.setJwtValidator(jwt.getIssuerUri() == null
+        ? JwtValidators.createDefault()
+        : JwtValidators.createDefaultWithIssuer(jwt.getIssuerUri()));
+    return new CachingJwtDecoder(decoder, maxSize, Clock.systemUTC()).bindTo(meterRegistry);
+  }
+
   /**
-   * Keycloak realm roles converter. Maps realm roles to Spring Security authorities.
+   * Keycloak realm roles converter. Maps realm roles to Spring Security authorities, cached per token by the decoder.
    */
   @Bean
-  public JwtAuthenticationConverter jwtAuthenticationConverter() {
+  public JwtAuthenticationConverter jwtAuthenticationConverter(CachingJwtDecoder jwtDecoder) {
     JwtGrantedAuthoritiesConverter scopesConverter = new JwtGrantedAuthoritiesConverter();
     scopesConverter.setAuthorityPrefix("SCOPE_");
 
     JwtAuthenticationConverter converter = new JwtAuthenticationConverter();
-    converter.setJwtGrantedAuthoritiesConverter(jwt -> {
+    converter.setJwtGrantedAuthoritiesConverter(jwtDecoder.cachingAuthorities(jwt -> {
       Collection<GrantedAuthority> authorities = new ArrayList<>(scopesConverter.convert(jwt));
 
       Map<String, Object> realmAccess = jwt.getClaim("realm_access");
@@ -78,7 +147,7 @@ public class OAuth2SecurityConfig {
         );
       }
       return authorities;
-    });
+    }));
 
     return converter;
   }
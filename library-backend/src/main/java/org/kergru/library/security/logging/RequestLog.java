@@ -0,0 +1,64 @@
+package org.kergru.library.security.logging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes {@link RequestLogEntry}s on a background thread, so request threads neither format nor wait for the log output.
+ * <p>
+ * Entries are passed through a bounded queue, entries which don't fit are dropped and counted as library.request.log.dropped.
+ */
+public class RequestLog {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final BlockingQueue<RequestLogEntry> queue;
+
+  private final Consumer<String> sink;
+
+  private final Counter dropped;
+
+  private final Thread writer;
+
+  public RequestLog(int capacity, MeterRegistry meterRegistry) {
+    this(capacity, meterRegistry, null);
+  }
+
+  RequestLog(int capacity, MeterRegistry meterRegistry, Consumer<String> sink) {
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.sink = sink == null ? logger::info : sink;
+    this.dropped = Counter.builder("library.request.log.dropped").register(meterRegistry);
+    this.writer = Thread.ofPlatform().name("request-log").daemon().start(this::write);
+  }
+
+  void submit(RequestLogEntry entry) {
+    if (!queue.offer(entry)) {
+      dropped.increment();
+    }
+  }
+
+  @PreDestroy
+  public void stop() {
+    writer.interrupt();
+  }
+
+  private void write() {
+    try {
+      while (true) {
+        sink.accept(queue.take().format());
+      }
+    } catch (InterruptedException e) {
+      List<RequestLogEntry> remaining = new ArrayList<>();
+      queue.drainTo(remaining);
+      remaining.forEach(entry -> sink.accept(entry.format()));
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package org.kergru.library.security.logging;
+
+import java.time.Instant;
+
+/**
+ * A logged request. Holds no token or header values, the user is taken from the preferred_username claim.
+ */
+record RequestLogEntry(Instant timestamp, String method, String path, int status, long durationMicros, String user, boolean slow) {
+
+  String format() {
+    return "time=" + timestamp
+        + " method=" + method
+        + " path=" + path
+        + " status=" + status
+        + " durationMs=" + durationMicros / 1000.0
+        + " user=" + (user == null ? "-" : user)
+        + " reason=" + (slow ? "slow" : "sampled");
+  }
+}
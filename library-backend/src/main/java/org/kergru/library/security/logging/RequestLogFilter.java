@@ -0,0 +1,60 @@
+package org.kergru.library.security.logging;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Logs 1 of sampleRate requests and every request slower than slowThreshold to the {@link RequestLog}.
+ * sampleRate = 0 logs only slow requests.
+ * <p>
+ * Requests not selected cost a clock read and a random number. Only method, path without query, status, duration
+ * and the preferred_username claim are logged, never the Authorization header or other token contents.
+ * Only added to the filter chain if library.request-log.enabled is set.
+ */
+public class RequestLogFilter extends OncePerRequestFilter {
+
+  private final RequestLog requestLog;
+
+  private final int sampleRate;
+
+  private final long slowThresholdNanos;
+
+  public RequestLogFilter(RequestLog requestLog, int sampleRate, Duration slowThreshold) {
+    this.requestLog = requestLog;
+    this.sampleRate = sampleRate;
+    this.slowThresholdNanos = slowThreshold.toNanos();
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    long start = System.nanoTime();
+    try {
+      filterChain.doFilter(request, response);
+    } finally {
+      long duration = System.nanoTime() - start;
+      boolean slow = duration >= slowThresholdNanos;
+      if (slow || (sampleRate > 0 && ThreadLocalRandom.current().nextInt(sampleRate) == 0)) {
+        requestLog.submit(new RequestLogEntry(Instant.now(), request.getMethod(), request.getRequestURI(), response.getStatus(),
+            duration / 1_000, userName(), slow));
+      }
+    }
+  }
+
+  private static String userName() {
+    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+    return authentication != null && authentication.getPrincipal() instanceof Jwt jwt
+        ? jwt.getClaimAsString("preferred_username")
+        : null;
+  }
+}
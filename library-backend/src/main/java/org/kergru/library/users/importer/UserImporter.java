@@ -0,0 +1,235 @@
+package org.kergru.library.users.importer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.kergru.library.model.UserDto;
+import org.kergru.library.model.UserImportResultDto;
+import org.kergru.library.model.UserImportResultDto.RejectedRow;
+import org.kergru.library.users.repository.UsersImportedEvent;
+import org.kergru.library.users.service.UserService.UserAlreadyExistsException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Streams NDJSON records of the {@link UserDto} shape into the users table.
+ * <p>
+ * Each chunk of library.import.user-batch-size rows is written with one multi-row INSERT IGNORE, duplicates are not
+ * checked upfront but skipped by the unique keys uk_users_username and uk_users_email. Only if the insert skipped rows,
+ * one SELECT finds out which rows collided with which key, so a chunk without duplicates costs a single round trip.
+ * The generated keys of the insert are not used: for a multi-row INSERT IGNORE the driver derives them from the first
+ * id, which doesn't hold if rows are skipped or auto_increment_increment isn't 1.
+ */
+@Service
+public class UserImporter {
+
+  private static final long PROGRESS_INTERVAL_MILLIS = 5_000;
+
+  private static final int MAX_REPORTED_REJECTS = 1_000;
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final NamedParameterJdbcTemplate jdbcTemplate;
+
+  private final ObjectMapper objectMapper;
+
+  private final ApplicationEventPublisher eventPublisher;
+
+  private final int batchSize;
+
+  public UserImporter(
+      NamedParameterJdbcTemplate jdbcTemplate,
+      ObjectMapper objectMapper,
+      ApplicationEventPublisher eventPublisher,
+      @Value("${library.import.user-batch-size:500}") int batchSize) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.objectMapper = objectMapper;
+    this.eventPublisher = eventPublisher;
+    this.batchSize = batchSize;
+  }
+
+  public UserImportResultDto importUsers(InputStream in) throws IOException {
+    long start = System.currentTimeMillis();
+    long lastProgress = start;
+    Progress progress = new Progress();
+
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+      List<Row> batch = new ArrayList<>(batchSize);
+      long lineNumber = 0;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        if (line.isBlank()) {
+          continue;
+        }
+        try {
+          batch.add(new Row(lineNumber, validate(objectMapper.readValue(line, UserDto.class))));
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+          progress.reject(new RejectedRow(lineNumber, null, "invalid: " + e.getMessage()));
+          continue;
+        }
+
+        if (batch.size() == batchSize) {
+          write(batch, progress);
+          long now = System.currentTimeMillis();
+          if (now - lastProgress >= PROGRESS_INTERVAL_MILLIS) {
+            logger.info("Imported {} users, {} rows/s", progress.imported, perSecond(progress.imported + progress.rejected, now - start));
+            lastProgress = now;
+          }
+        }
+      }
+      write(batch, progress);
+    } finally {
+      if (progress.imported > 0) {
+        eventPublisher.publishEvent(new UsersImportedEvent(progress.imported));
+      }
+    }
+
+    long duration = System.currentTimeMillis() - start;
+    long rowsPerSecond = perSecond(progress.imported + progress.rejected, duration);
+    logger.info("Imported {} users in {} ms, {} rows/s, {} rejected", progress.imported, duration, rowsPerSecond, progress.rejected);
+    return new UserImportResultDto(progress.imported, progress.rejected, duration, rowsPerSecond, progress.rejectedRows);
+  }
+
+  private void write(List<Row> batch, Progress progress) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    StringBuilder sql = new StringBuilder("INSERT IGNORE INTO users (username, firstname, lastname, email) VALUES ");
+    MapSqlParameterSource params = new MapSqlParameterSource();
+    for (int i = 0; i < batch.size(); i++) {
+      UserDto user = batch.get(i).user();
+      sql.append(i == 0 ? "" : ", ").append("(:u").append(i).append(", :f").append(i).append(", :l").append(i).append(", :e").append(i).append(')');
+      params.addValue("u" + i, user.userName())
+          .addValue("f" + i, user.firstName())
+          .addValue("l" + i, user.lastName())
+          .addValue("e" + i, user.email());
+    }
+    int inserted = jdbcTemplate.update(sql.toString(), params);
+    progress.imported += inserted;
+
+    if (inserted < batch.size()) {
+      findDuplicates(batch, inserted).forEach(progress::reject);
+    }
+    batch.clear();
+  }
+
+  /**
+   * Maps the rows skipped by INSERT IGNORE back to the unique key they collided with.
+   * <p>
+   * An inserted row is stored exactly as given, but so may be a user which existed before (e.g. a file imported twice).
+   * Ids are assigned in ascending order, so of the users stored like a row of the batch, the inserted ones are the
+   * inserted (count of the insert) with the highest ids.
+   */
+  private List<RejectedRow> findDuplicates(List<Row> batch, int inserted) {
+    Map<String, StoredUser> byUsername = new HashMap<>();
+    Map<String, StoredUser> byEmail = new HashMap<>();
+    jdbcTemplate.query("""
+        SELECT id, username, firstname, lastname, email
+        FROM users
+        WHERE username IN (:usernames) OR email IN (:emails)
+        """,
+        new MapSqlParameterSource()
+            .addValue("usernames", batch.stream().map(r -> r.user().userName()).toList())
+            .addValue("emails", batch.stream().map(r -> r.user().email()).toList()),
+        rs -> {
+          StoredUser stored = new StoredUser(rs.getLong("id"), new UserDto(
+              rs.getString("username"), rs.getString("firstname"), rs.getString("lastname"), rs.getString("email")));
+          byUsername.put(key(stored.user().userName()), stored);
+          byEmail.put(key(stored.user().email()), stored);
+        });
+
+    Set<Long> insertedIds = batch.stream()
+        .map(row -> storedAsGiven(row, byUsername))
+        .filter(Objects::nonNull)
+        .map(StoredUser::id)
+        .distinct()
+        .sorted(Comparator.reverseOrder())
+        .limit(inserted)
+        .collect(Collectors.toCollection(HashSet::new));
+
+    List<RejectedRow> duplicates = new ArrayList<>();
+    for (Row row : batch) {
+      StoredUser stored = storedAsGiven(row, byUsername);
+      // remove, as only the first of several equal rows has been inserted
+      if (stored == null || !insertedIds.remove(stored.id())) {
+        duplicates.add(new RejectedRow(row.lineNumber(), row.user().userName(), new UserAlreadyExistsException(
+            byUsername.containsKey(key(row.user().userName())), byEmail.containsKey(key(row.user().email()))).getHints()));
+      }
+    }
+    return duplicates;
+  }
+
+  private static StoredUser storedAsGiven(Row row, Map<String, StoredUser> byUsername) {
+    StoredUser stored = byUsername.get(key(row.user().userName()));
+    return stored != null && stored.user().equals(row.user()) ? stored : null;
+  }
+
+  private static UserDto validate(UserDto user) {
+    if (isBlank(user.userName()) || isBlank(user.firstName()) || isBlank(user.lastName()) || isBlank(user.email())) {
+      throw new IllegalArgumentException("userName, firstName, lastName and email are mandatory");
+    }
+    // INSERT IGNORE would truncate too long values instead of failing
+    if (user.userName().length() > 100 || user.firstName().length() > 100 || user.lastName().length() > 100
+        || user.email().length() > 255) {
+      throw new IllegalArgumentException("userName, firstName and lastName are limited to 100, email to 255 characters");
+    }
+    return user;
+  }
+
+  private static boolean isBlank(String value) {
+    return value == null || value.isBlank();
+  }
+
+  // the unique keys compare case-insensitive
+  private static String key(String value) {
+    return value.toLowerCase(Locale.ROOT);
+  }
+
+  private static long perSecond(long count, long millis) {
+    return millis == 0 ? count : count * 1000 / millis;
+  }
+
+  private record Row(long lineNumber, UserDto user) {
+
+  }
+
+  private record StoredUser(long id, UserDto user) {
+
+  }
+
+  private static class Progress {
+
+    private long imported;
+
+    private long rejected;
+
+    private final List<RejectedRow> rejectedRows = new ArrayList<>();
+
+    void reject(RejectedRow row) {
+      rejected++;
+      if (rejectedRows.size() < MAX_REPORTED_REJECTS) {
+        rejectedRows.add(row);
+      }
+    }
+  }
+}
@@ -0,0 +1,8 @@
+package org.kergru.library.users.repository;
+
+public interface UserIdProjection {
+
+  Long getId();
+
+  String getUsername();
+}
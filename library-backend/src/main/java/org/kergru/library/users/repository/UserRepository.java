@@ -1,27 +1,41 @@
 package org.kergru.library.users.repository;
 
+import java.util.List;
 import java.util.Optional;
-import org.springframework.data.domain.Page;
+import org.kergru.library.cache.CacheConfig;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
-public interface UserRepository extends JpaRepository<UserEntity, Long> {
+import org.springframework.data.repository.query.Param;
 
+public interface UserRepository extends JpaRepository<UserEntity, Long>, JpaSpecificationExecutor<UserEntity> {
+
+  /**
+   * Cached including not found results, evicted by {@link #save(UserEntity)} and {@link #deleteByUsername(String)}.
+   */
+  @Cacheable(CacheConfig.USERS_BY_USERNAME)
   Optional<UserEntity> findByUsername(String username);
 
-  @Query("""
-    SELECT u
-    FROM UserEntity u
-    WHERE 
-        (:#{#searchString} IS NULL OR 
-         u.username LIKE %:#{#searchString}% OR 
-         u.firstname LIKE %:#{#searchString}% OR 
-         u.lastname LIKE %:#{#searchString}% OR 
-         u.email LIKE %:#{#searchString}%)
-  """)
-  Page<UserEntity> searchUsersPaged(String searchString, Pageable pageable);
+  /**
+   * Resolves the id of a username, e.g. of the preferred_username claim, without loading the user.
+   * Cached including not found results, evicted like {@link #findByUsername(String)} and pre-warmed at startup.
+   */
+  @Cacheable(CacheConfig.USER_IDS_BY_USERNAME)
+  @Query("SELECT u.id FROM UserEntity u WHERE u.username = :username")
+  Optional<Long> findIdByUsername(@Param("username") String username);
+
+  @Query("SELECT u.id AS id, u.username AS username FROM UserEntity u ORDER BY u.id")
+  List<UserIdProjection> findUserIds(Pageable pageable);
+
+  @Override
+  @CacheEvict(cacheNames = {CacheConfig.USERS_BY_USERNAME, CacheConfig.USER_IDS_BY_USERNAME}, key = "#p0.username")
+  <S extends UserEntity> S save(S user);
 
   Optional<UserEntity> findByUsernameOrEmail(String username, String email);
 
+  @CacheEvict({CacheConfig.USERS_BY_USERNAME, CacheConfig.USER_IDS_BY_USERNAME})
   void deleteByUsername(String username);
 }
@@ -0,0 +1,8 @@
+package org.kergru.library.users.repository;
+
+/**
+ * Published after users have been inserted in bulk, bypassing JPA and the caches of {@link UserRepository}.
+ */
+public record UsersImportedEvent(long importedUsers) {
+
+}
@@ -1,16 +1,29 @@
 package org.kergru.library.users.rest;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.time.Instant;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import org.kergru.library.loans.service.LoanService;
+import org.kergru.library.model.BorrowResultDto;
 import org.kergru.library.model.LoanDto;
+import org.kergru.library.model.LoanFilter;
 import org.kergru.library.model.PageResponseDto;
+import org.kergru.library.model.ResultView;
+import org.kergru.library.model.ReturnRequestDto;
+import org.kergru.library.model.ReturnResultDto;
+import org.kergru.library.model.TotalMode;
 import org.kergru.library.model.UserDto;
+import org.kergru.library.model.UserImportResultDto;
+import org.kergru.library.users.importer.UserImporter;
 import org.kergru.library.users.service.UserService;
 import org.kergru.library.users.service.UserService.UserAlreadyExistsException;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ProblemDetail;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -32,9 +45,12 @@ public class UserController {
 
   private final LoanService loanService;
 
-  public UserController(UserService userService, LoanService loanService) {
+  private final UserImporter userImporter;
+
+  public UserController(UserService userService, LoanService loanService, UserImporter userImporter) {
     this.userService = userService;
     this.loanService = loanService;
+    this.userImporter = userImporter;
   }
 
   @GetMapping("/users")
@@ -43,9 +59,16 @@ public class UserController {
       @RequestParam(required = false) String searchString,
       @RequestParam(defaultValue = "0") int page,
       @RequestParam(defaultValue = "10") int size,
-      @RequestParam(defaultValue = "firstname") String sortBy
+      @RequestParam(defaultValue = "firstname") String sortBy,
+      @RequestParam(required = false) String cursor,
+      @RequestParam(defaultValue = "EXACT") TotalMode total,
+      @RequestParam(defaultValue = "FULL") ResultView view
   ) {
-    return ResponseEntity.ok(userService.searchUsers(searchString, page, size, sortBy));
+    try {
+      return ResponseEntity.ok(userService.searchUsers(searchString, page, size, sortBy, cursor, total, view));
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
   }
 
   @PostMapping("/users")
@@ -62,6 +85,16 @@ public class UserController {
     }
   }
 
+  /**
+   * Imports users from an NDJSON body of UserDto records, e.g. at the start of a school term.
+   * Existing usernames or emails don't fail the import, they are reported per line.
+   */
+  @PostMapping(path = "/users/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+  @PreAuthorize("hasRole('LIBRARIAN')")
+  public ResponseEntity<UserImportResultDto> importUsers(InputStream body) throws IOException {
+    return ResponseEntity.ok(userImporter.importUsers(body));
+  }
+
   @DeleteMapping("/users/{userName}")
   @PreAuthorize("hasRole('LIBRARIAN')")
   public ResponseEntity<?> deleteUser(@PathVariable String userName) {
@@ -80,7 +113,8 @@ public class UserController {
   }
 
   /**
-   * All borrowed books by a user, only accessible by the librarian or the user himself
+   * All borrowed books by a user, only accessible by the librarian or the user himself.
+   * Loads the whole history at once, use /loans/history for paged access.
    */
   @PreAuthorize("hasRole('LIBRARIAN') or #userName == authentication.principal.claims['preferred_username']")
   @GetMapping("/users/{userName}/loans")
@@ -88,6 +122,27 @@ public class UserController {
     return ResponseEntity.ok(loanService.findBorrowedByUser(userName));
   }
 
+  /**
+   * One page of the loan history of a user, newest first, only accessible by the librarian or the user himself.
+   * from and to restrict the history to loans borrowed in [from, to).
+   */
+  @PreAuthorize("hasRole('LIBRARIAN') or #userName == authentication.principal.claims['preferred_username']")
+  @GetMapping("/users/{userName}/loans/history")
+  public ResponseEntity<PageResponseDto<LoanDto>> getLoanHistory(
+      @PathVariable String userName,
+      @RequestParam(defaultValue = "ALL") LoanFilter status,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+      @RequestParam(defaultValue = "0") int page,
+      @RequestParam(defaultValue = "20") int size
+  ) {
+    try {
+      return ResponseEntity.ok(loanService.findLoanHistory(userName, status, from, to, page, size));
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+  }
+
   /**
    * Borrows a book to a user. Endpoint is only available for the user himself.
    * If the book is already borrowed, a 409 Conflict is returned.
@@ -104,6 +159,21 @@ public class UserController {
     }
   }
 
+  /**
+   * Borrows several books to a user at once. Endpoint is only available for the user himself.
+   * The result tells for every isbn if it has been borrowed, is already borrowed or doesn't exist.
+   */
+  @PreAuthorize("#userName == authentication.principal.claims['preferred_username']")
+  @PostMapping("/users/{userName}/loans/batch")
+  public ResponseEntity<List<BorrowResultDto>> borrowBooks(@PathVariable String userName, @RequestBody List<String> isbns) {
+
+    try {
+      return ResponseEntity.ok(loanService.borrowBooks(isbns, userName));
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+  }
+
   /**
    * Returns a book to library by setting returnedAt date in loan. Endpoint is only available for the user himself.
    * If no loan with id found or loan not borrowed by user, a 404 NotFound is returned.
@@ -119,4 +189,19 @@ public class UserController {
       throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
     }
   }
+
+  /**
+   * Returns several loans at once, identified by loan id or isbn. Endpoint is only available for librarians.
+   * The result tells for every item if the loan has been returned, there is no active loan or the isbn doesn't exist.
+   */
+  @PreAuthorize("hasRole('LIBRARIAN')")
+  @PostMapping("/loans/returns")
+  public ResponseEntity<List<ReturnResultDto>> returnBooks(@RequestBody ReturnRequestDto request) {
+
+    try {
+      return ResponseEntity.ok(loanService.returnBooks(request));
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+  }
 }
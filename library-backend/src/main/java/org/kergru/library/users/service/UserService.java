@@ -1,16 +1,39 @@
 package org.kergru.library.users.service;
 
+import jakarta.persistence.Tuple;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import org.kergru.library.cache.CacheConfig;
 import org.kergru.library.model.PageResponseDto;
+import org.kergru.library.model.ResultView;
+import org.kergru.library.model.TotalMode;
 import org.kergru.library.model.UserDto;
+import org.kergru.library.search.FullTextQuery;
+import org.kergru.library.search.ProjectedSearch;
+import org.kergru.library.search.SearchCountCache;
+import org.kergru.library.search.SearchCursor;
+import org.kergru.library.search.SearchMode;
 import org.kergru.library.users.repository.UserEntity;
+import org.kergru.library.users.repository.UserIdProjection;
 import org.kergru.library.users.repository.UserRepository;
+import org.kergru.library.users.repository.UsersImportedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
@@ -18,23 +41,94 @@ import org.springframework.util.StringUtils;
 @Service
 public class UserService {
 
+  private static final String COUNT_SCOPE = "users";
+
+  private static final Set<String> CURSOR_SORT_KEYS = Set.of("username", "firstname", "lastname", "email");
+
+  private static final List<String> SUMMARY_ATTRIBUTES = List.of("id", "username", "firstname", "lastname");
+
+  private static final List<String> FULL_ATTRIBUTES = List.of("id", "username", "firstname", "lastname", "email");
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
   private final UserRepository repository;
 
-  public UserService(UserRepository repository) {
+  private final SearchMode searchMode;
+
+  private final SearchCountCache countCache;
+
+  private final ProjectedSearch projectedSearch;
+
+  private final CacheManager cacheManager;
+
+  private final int userIdPrewarmSize;
+
+  public UserService(
+      UserRepository repository,
+      @Value("${library.search.mode:like}") SearchMode searchMode,
+      SearchCountCache countCache,
+      ProjectedSearch projectedSearch,
+      CacheManager cacheManager,
+      @Value("${library.cache.user-ids.prewarm-size:10000}") int userIdPrewarmSize) {
     this.repository = repository;
+    this.searchMode = searchMode;
+    this.countCache = countCache;
+    this.projectedSearch = projectedSearch;
+    this.cacheManager = cacheManager;
+    this.userIdPrewarmSize = userIdPrewarmSize;
+  }
+
+  /**
+   * Fills the cache of {@link UserRepository#findIdByUsername(String)} with the first library.cache.user-ids.prewarm-size users,
+   * so the first loan operation of a user doesn't have to resolve the username.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void prewarmUserIds() {
+    if (userIdPrewarmSize <= 0) {
+      return;
+    }
+    long start = System.currentTimeMillis();
+    Cache cache = cacheManager.getCache(CacheConfig.USER_IDS_BY_USERNAME);
+    List<UserIdProjection> users = repository.findUserIds(PageRequest.of(0, userIdPrewarmSize));
+    users.forEach(u -> cache.putIfAbsent(u.getUsername(), u.getId()));
+    logger.info("Pre-warmed user id cache with {} users in {} ms", users.size(), System.currentTimeMillis() - start);
   }
 
   public Optional<UserDto> getUser(String userName) {
     return repository.findByUsername(userName).map(this::toDto);
   }
 
-  public PageResponseDto<UserDto> searchUsers(String searchString, int page, int size, String sortBy) {
+  /**
+   * Searches users by username, name or email. Without cursor the page is selected by page number,
+   * with a cursor (nextCursor of a previous page) by a keyset query after the cursor position, page is ignored then.
+   * totalMode decides if a page selected by page number is counted, cursor pages are never counted.
+   * view selects the columns which are read and returned.
+   *
+   * @throws IllegalArgumentException if the cursor is invalid
+   */
+  public PageResponseDto<UserDto> searchUsers(
+      String searchString, int page, int size, String sortBy, String cursor, TotalMode totalMode, ResultView view) {
+
+    if (cursor != null) {
+      return searchUsersAfter(searchString, size, SearchCursor.decode(cursor), view);
+    }
+
+    PageRequest pageRequest = PageRequest.of(page, size, Sort.by(sortBy).and(Sort.by("id")));
+    return switch (totalMode) {
+      case EXACT -> searchSqlCounted(searchString, pageRequest, sortBy, view);
+      case CACHED -> searchSqlCached(searchString, pageRequest, sortBy, view);
+      case NONE -> {
+        Slice<Tuple> slice = searchSqlSliced(searchString, pageRequest, sortBy, view);
+        yield PageResponseDto.ofSlice(toDtos(slice.getContent(), view), page, size, slice.hasNext(), nextCursor(sortBy, slice));
+      }
+    };
+  }
 
-    var usersPage = repository.searchUsersPaged(
-        StringUtils.hasText(searchString) ? searchString : null,
-        PageRequest.of(page, size, Sort.by(sortBy)));
+  private PageResponseDto<UserDto> searchSqlCounted(
+      String searchString, PageRequest pageRequest, String sortBy, ResultView view) {
+    var usersPage = searchSql(searchString, pageRequest, sortBy, view);
     return new PageResponseDto<>(
-        usersPage.getContent().stream().map(this::toDto).collect(Collectors.toList()),
+        toDtos(usersPage.getContent(), view),
         usersPage.getNumber(),
         usersPage.getSize(),
         usersPage.getTotalPages(),
@@ -42,10 +136,128 @@ public class UserService {
         usersPage.isFirst(),
         usersPage.isLast(),
         usersPage.getNumberOfElements(),
-        usersPage.isEmpty()
+        usersPage.isEmpty(),
+        nextCursor(sortBy, usersPage),
+        TotalMode.EXACT
+    );
+  }
+
+  /**
+   * Counts only if the count of the search string is not cached yet, otherwise reads a slice and takes the cached total.
+   */
+  private PageResponseDto<UserDto> searchSqlCached(
+      String searchString, PageRequest pageRequest, String sortBy, ResultView view) {
+    SearchCountCache.Entry count = countCache.lookup(COUNT_SCOPE, searchString);
+    Optional<Long> cachedTotal = count.get();
+    if (cachedTotal.isEmpty()) {
+      PageResponseDto<UserDto> counted = searchSqlCounted(searchString, pageRequest, sortBy, view);
+      count.put(counted.totalElements());
+      return counted;
+    }
+
+    long total = cachedTotal.get();
+    Slice<Tuple> slice = searchSqlSliced(searchString, pageRequest, sortBy, view);
+    return new PageResponseDto<>(
+        toDtos(slice.getContent(), view),
+        slice.getNumber(),
+        slice.getSize(),
+        (int) ((total + slice.getSize() - 1) / slice.getSize()),
+        total,
+        slice.isFirst(),
+        slice.isLast(),
+        slice.getNumberOfElements(),
+        slice.isEmpty(),
+        nextCursor(sortBy, slice),
+        TotalMode.CACHED
     );
   }
 
+  /**
+   * Reads size + 1 users to find out if there is a next page, without the count query.
+   */
+  private Slice<Tuple> searchSqlSliced(String searchString, PageRequest pageRequest, String sortBy, ResultView view) {
+    return projectedSearch.findSlice(UserEntity.class, matching(searchString), attributes(view, sortBy), pageRequest);
+  }
+
+  private Page<Tuple> searchSql(String searchString, PageRequest pageRequest, String sortBy, ResultView view) {
+    return projectedSearch.findPage(UserEntity.class, matching(searchString), attributes(view, sortBy), pageRequest);
+  }
+
+  /**
+   * Keyset query: reads size + 1 users after the cursor to find out if there is a next page, no OFFSET and no COUNT.
+   */
+  private PageResponseDto<UserDto> searchUsersAfter(String searchString, int size, SearchCursor after, ResultView view) {
+    if (!CURSOR_SORT_KEYS.contains(after.sortBy())) {
+      throw new IllegalArgumentException("Cursor not supported for sort order " + after.sortBy());
+    }
+    Specification<UserEntity> spec = matching(searchString).and(after.after(after.sortBy()));
+    List<Tuple> users = projectedSearch.find(UserEntity.class, spec, attributes(view, after.sortBy()),
+        Sort.by(after.sortBy()).and(Sort.by("id")), 0, size + 1);
+
+    boolean hasNext = users.size() > size;
+    List<Tuple> pageUsers = hasNext ? users.subList(0, size) : users;
+    return PageResponseDto.ofCursor(
+        toDtos(pageUsers, view),
+        size,
+        hasNext ? nextCursor(after.sortBy(), pageUsers.getLast()) : null);
+  }
+
+  private Specification<UserEntity> matching(String searchString) {
+    return (root, query, cb) -> {
+      if (!StringUtils.hasText(searchString)) {
+        return cb.conjunction();
+      }
+      if (searchMode == SearchMode.FULLTEXT) {
+        String booleanModeQuery = FullTextQuery.booleanMode(searchString);
+        if (!booleanModeQuery.isEmpty()) {
+          return FullTextQuery.matches(cb, booleanModeQuery,
+              root.get("username"), root.get("firstname"), root.get("lastname"), root.get("email"));
+        }
+      }
+      String pattern = "%" + searchString + "%";
+      return cb.or(
+          cb.like(root.get("username"), pattern),
+          cb.like(root.get("firstname"), pattern),
+          cb.like(root.get("lastname"), pattern),
+          cb.like(root.get("email"), pattern));
+    };
+  }
+
+  /**
+   * Attributes read for the view, plus the sort key which the cursor is built from.
+   */
+  private static List<String> attributes(ResultView view, String sortBy) {
+    List<String> attributes = view == ResultView.SUMMARY ? SUMMARY_ATTRIBUTES : FULL_ATTRIBUTES;
+    if (CURSOR_SORT_KEYS.contains(sortBy) && !attributes.contains(sortBy)) {
+      return Stream.concat(attributes.stream(), Stream.of(sortBy)).toList();
+    }
+    return attributes;
+  }
+
+  private static List<UserDto> toDtos(List<Tuple> users, ResultView view) {
+    return users.stream()
+        .map(u -> new UserDto(
+            u.get("username", String.class),
+            u.get("firstname", String.class),
+            u.get("lastname", String.class),
+            view == ResultView.FULL ? u.get("email", String.class) : null))
+        .toList();
+  }
+
+  /**
+   * Cursor after the given user, null if the sort order is not supported for cursors.
+   */
+  private static String nextCursor(String sortBy, Slice<Tuple> slice) {
+    return slice.hasNext() ? nextCursor(sortBy, slice.getContent().getLast()) : null;
+  }
+
+  private static String nextCursor(String sortBy, Tuple last) {
+    if (!CURSOR_SORT_KEYS.contains(sortBy)) {
+      return null;
+    }
+    return new SearchCursor(sortBy, last.get(sortBy, String.class), last.get("id", Long.class)).encode();
+  }
+
   public UserDto createUser(UserDto user) {
     Optional<UserEntity> existingUser = repository.findByUsernameOrEmail(user.userName(), user.email());
     if (existingUser.isPresent()) {
@@ -56,12 +268,20 @@ public class UserService {
 
     UserEntity userEntity = new UserEntity(null, user.userName(), user.firstName(), user.lastName(), user.email());
     repository.save(userEntity);
+    countCache.invalidate(COUNT_SCOPE);
     return toDto(userEntity);
   }
 
   @Transactional
   public void deleteUser(String userName) {
     repository.deleteByUsername(userName);
+    countCache.invalidate(COUNT_SCOPE);
+  }
+
+  @EventListener
+  @CacheEvict(cacheNames = {CacheConfig.USERS_BY_USERNAME, CacheConfig.USER_IDS_BY_USERNAME}, allEntries = true)
+  public void onUsersImported(UsersImportedEvent event) {
+    countCache.invalidate(COUNT_SCOPE);
   }
 
   private UserDto toDto(UserEntity e) {
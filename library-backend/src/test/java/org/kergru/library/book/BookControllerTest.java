@@ -1,20 +1,32 @@
 package org.kergru.library.book;
 
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.kergru.library.JwtTestUtils.jwtWithRoles;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import com.jayway.jsonpath.JsonPath;
+import java.time.Instant;
+import java.util.List;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.kergru.library.books.repository.BookRepository;
 import org.kergru.library.loans.repository.LoanRepository;
 import org.kergru.library.loans.service.LoanService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
@@ -35,6 +47,9 @@ public class BookControllerTest {
   @Autowired
   private LoanRepository loanRepository;
 
+  @Autowired
+  private BookRepository bookRepository;
+
   // Hack to create JwtDecoder bean by Spring Security
   @DynamicPropertySource
   static void registerProperties(DynamicPropertyRegistry registry) {
@@ -57,6 +72,7 @@ public class BookControllerTest {
         .andExpect(status().isOk())
         .andExpect(content().string(containsString("Clean Code")))
         .andExpect(content().string(containsString("9780132350884")))
+        .andExpect(jsonPath("$.description").value("Beschreibung Clean Code"))
         .andExpect(jsonPath("$.loanStatus.available").value(true));
   }
 
@@ -87,4 +103,324 @@ public class BookControllerTest {
         .andExpect(content().string(containsString("Clean Code")))
         .andExpect(content().string(containsString("9780132350884")));
   }
+
+  @Test
+  @WithMockUser
+  public void expectSearchBooksByRelevanceShouldReturnBooks() throws Exception {
+    var jwt = jwtWithRoles("demo_user_1");
+    mockMvc.perform(get("/library/api/books")
+            .queryParam("searchString", "clean")
+            .queryParam("sortBy", "relevance")
+            .with(jwt))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.totalElements").value(2))
+        .andExpect(content().string(containsString("Clean Code")))
+        .andExpect(content().string(containsString("Clean Architecture")));
+  }
+
+  @Test
+  @WithMockUser
+  public void expectSearchBooksByCursorShouldContinueLikeNextPage() throws Exception {
+    var jwt = jwtWithRoles("demo_user_1");
+    String firstPage = mockMvc.perform(get("/library/api/books")
+            .queryParam("size", "2")
+            .with(jwt))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.nextCursor").isNotEmpty())
+        .andReturn().getResponse().getContentAsString();
+    String secondPage = mockMvc.perform(get("/library/api/books")
+            .queryParam("page", "1")
+            .queryParam("size", "2")
+            .with(jwt))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+
+    mockMvc.perform(get("/library/api/books")
+            .queryParam("size", "2")
+            .queryParam("cursor", JsonPath.<String>read(firstPage, "$.nextCursor"))
+            .with(jwt))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.totalElements").value(-1))
+        .andExpect(jsonPath("$.content[*].isbn").value(JsonPath.<List<String>>read(secondPage, "$.content[*].isbn")))
+        .andExpect(jsonPath("$.content[0].loanStatus.available").value(true));
+  }
+
+  @Test
+  @WithMockUser
+  public void expectSearchBooksInSummaryViewShouldOmitDetails() throws Exception {
+    var jwt = jwtWithRoles("demo_user_1");
+    String full = mockMvc.perform(get("/library/api/books")
+            .queryParam("size", "20")
+            .with(jwt))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.content[0].publisher").isNotEmpty())
+        .andExpect(jsonPath("$.content[0].description").doesNotExist())
+        .andReturn().getResponse().getContentAsString();
+    String summary = mockMvc.perform(get("/library/api/books")
+            .queryParam("size", "20")
+            .queryParam("view", "SUMMARY")
+            .with(jwt))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.content[*].isbn").value(JsonPath.<List<String>>read(full, "$.content[*].isbn")))
+        .andExpect(jsonPath("$.content[0].title").isNotEmpty())
+        .andExpect(jsonPath("$.content[0].loanStatus.available").value(true))
+        .andExpect(jsonPath("$.content[0].description").doesNotExist())
+        .andExpect(jsonPath("$.content[0].publisher").doesNotExist())
+        .andReturn().getResponse().getContentAsString();
+
+    // search index path
+    mockMvc.perform(get("/library/api/books")
+            .queryParam("searchString", "clean")
+            .queryParam("view", "SUMMARY")
+            .with(jwt))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.content.length()").value(2))
+        .andExpect(jsonPath("$.content[0].description").doesNotExist());
+
+    System.out.printf("book page of 20: full view %d bytes, summary view %d bytes%n", full.length(), summary.length());
+  }
+
+  @Test
+  @WithMockUser
+  public void expectSearchBooksWithInvalidCursorShouldReturnBadRequest() throws Exception {
+    var jwt = jwtWithRoles("demo_user_1");
+    mockMvc.perform(get("/library/api/books")
+            .queryParam("cursor", "not-a-cursor")
+            .with(jwt))
+        .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  @WithMockUser
+  public void expectSearchBooksWithoutTotalShouldReturnHasNextOnly() throws Exception {
+    var jwt = jwtWithRoles("demo_user_1");
+    mockMvc.perform(get("/library/api/books")
+            .queryParam("size", "2")
+            .queryParam("total", "NONE")
+            .with(jwt))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.totalMode").value("NONE"))
+        .andExpect(jsonPath("$.totalElements").value(-1))
+        .andExpect(jsonPath("$.last").value(false))
+        .andExpect(jsonPath("$.content.length()").value(2));
+  }
+
+  @Test
+  @WithMockUser
+  public void expectSearchBooksWithCachedTotalShouldReuseCount() throws Exception {
+    var jwt = jwtWithRoles("demo_user_1");
+    String counted = mockMvc.perform(get("/library/api/books")
+            .queryParam("total", "CACHED")
+            .with(jwt))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+
+    mockMvc.perform(get("/library/api/books")
+            .queryParam("page", "1")
+            .queryParam("size", "2")
+            .queryParam("total", "CACHED")
+            .with(jwt))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.totalMode").value("CACHED"))
+        .andExpect(jsonPath("$.totalElements").value(JsonPath.<Integer>read(counted, "$.totalElements")))
+        .andExpect(jsonPath("$.number").value(1));
+  }
+
+  @Test
+  @WithMockUser
+  public void expectGetBookWithMatchingETagShouldReturnNotModifiedUntilBorrowed() throws Exception {
+    var jwt = jwtWithRoles("demo_user_1");
+    String eTag = mockMvc.perform(get("/library/api/books/9780132350884").with(jwt))
+        .andExpect(status().isOk())
+        .andExpect(header().exists("ETag"))
+        .andExpect(header().exists("Last-Modified"))
+        .andReturn().getResponse().getHeader("ETag");
+
+    mockMvc.perform(get("/library/api/books/9780132350884").header("If-None-Match", eTag).with(jwt))
+        .andExpect(status().isNotModified())
+        .andExpect(header().string("ETag", eTag))
+        .andExpect(content().string(""));
+
+    // a loan of another book doesn't change the book
+    loanService.borrowBook("9780134494166", "demo_user_1");
+    mockMvc.perform(get("/library/api/books/9780132350884").header("If-None-Match", eTag).with(jwt))
+        .andExpect(status().isNotModified());
+
+    loanService.borrowBook("9780132350884", "demo_user_1");
+    mockMvc.perform(get("/library/api/books/9780132350884").header("If-None-Match", eTag).with(jwt))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.loanStatus.available").value(false))
+        .andExpect(result -> assertNotEquals(eTag, result.getResponse().getHeader("ETag")));
+  }
+
+  @Test
+  @WithMockUser
+  public void expectSearchBooksWithMatchingETagShouldReturnNotModifiedUntilCatalogChanges() throws Exception {
+    var jwt = jwtWithRoles("demo_user_1");
+    String eTag = mockMvc.perform(get("/library/api/books").queryParam("searchString", "Clean").with(jwt))
+        .andExpect(status().isOk())
+        .andExpect(header().string("Cache-Control", containsString("no-cache")))
+        .andReturn().getResponse().getHeader("ETag");
+
+    mockMvc.perform(get("/library/api/books").queryParam("searchString", "Clean").header("If-None-Match", eTag).with(jwt))
+        .andExpect(status().isNotModified());
+
+    loanService.borrowBook("9780134494166", "demo_user_1");
+    mockMvc.perform(get("/library/api/books").queryParam("searchString", "Clean").header("If-None-Match", eTag).with(jwt))
+        .andExpect(status().isOk())
+        .andExpect(content().string(containsString("Clean Architecture")));
+  }
+
+  @Test
+  @WithMockUser
+  public void expectBookLookupsShouldBeCachedWithMetrics() throws Exception {
+    var jwt = jwtWithRoles("demo_user_1");
+    mockMvc.perform(get("/library/api/books/9780132350884").with(jwt))
+        .andExpect(status().isOk());
+    mockMvc.perform(get("/library/api/books/9780132350884").with(jwt))
+        .andExpect(status().isOk());
+
+    mockMvc.perform(get("/actuator/metrics/cache.gets")
+            .queryParam("tag", "name:booksByIsbn", "result:hit")
+            .with(jwtWithRoles("librarian", "LIBRARIAN")))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.measurements[0].value").value(greaterThan(0.0)));
+  }
+
+  @Test
+  public void expectMetricsShouldRequireLibrarian() throws Exception {
+    mockMvc.perform(get("/actuator/metrics"))
+        .andExpect(status().isUnauthorized());
+    mockMvc.perform(get("/actuator/metrics").with(jwtWithRoles("demo_user_1")))
+        .andExpect(status().isForbidden());
+    mockMvc.perform(get("/actuator/health"))
+        .andExpect(status().isOk());
+  }
+
+  @Test
+  @WithMockUser
+  public void expectImportBooksShouldRejectTooLongValuesOnly() throws Exception {
+    var jwt = jwtWithRoles("librarian", "LIBRARIAN");
+    var csv = """
+        isbn,title,author,publishedAt,publisher,language,pages,description
+        9780000000011,First Valid Book,John Doe,2020,Import Press,EN,100,
+        9780000000012,%s,John Doe,2020,Import Press,EN,100,
+        9780000000013,Second Valid Book,John Doe,2020,Import Press,%s,100,
+        9780000000014,Third Valid Book,John Doe,2020,Import Press,EN,100,
+        """.formatted("T".repeat(256), "L".repeat(33));
+    try {
+      mockMvc.perform(post("/library/api/books/import")
+              .contentType("text/csv")
+              .content(csv)
+              .with(jwt))
+          .andExpect(status().isOk())
+          .andExpect(jsonPath("$.imported").value(2))
+          .andExpect(jsonPath("$.rejected").value(2));
+
+      mockMvc.perform(get("/library/api/books/9780000000014").with(jwt))
+          .andExpect(status().isOk());
+    } finally {
+      List.of("9780000000011", "9780000000014").forEach(isbn -> bookRepository.findByIsbn(isbn).ifPresent(bookRepository::delete));
+    }
+  }
+
+  @Test
+  @WithMockUser
+  public void expectImportBooksShouldInsertAndUpdateBooks() throws Exception {
+    var jwt = jwtWithRoles("librarian", "LIBRARIAN");
+    // not found result is cached before the import
+    mockMvc.perform(get("/library/api/books/9780000000001").with(jwt))
+        .andExpect(status().isNotFound());
+
+    var csv = """
+        isbn,title,author,publishedAt,publisher,language,pages,description
+        9780000000001,Imported Book,"Doe, Jane",2020,Import Press,EN,100,"Line one
+        line ""two\"\"\"
+        9780000000002,Second Imported Book,John Doe,2021,Import Press,EN,200,
+        9780000000003,Missing Pages,John Doe,2021,Import Press,EN,,
+        9780000000004,Bad Year,John Doe,soon,Import Press,EN,100,
+        """;
+    try {
+      mockMvc.perform(post("/library/api/books/import")
+              .contentType("text/csv")
+              .content(csv)
+              .with(jwt))
+          .andExpect(status().isOk())
+          .andExpect(jsonPath("$.imported").value(2))
+          .andExpect(jsonPath("$.rejected").value(2));
+
+      mockMvc.perform(get("/library/api/books/9780000000001").with(jwt))
+          .andExpect(status().isOk())
+          .andExpect(jsonPath("$.author").value("Doe, Jane"))
+          .andExpect(jsonPath("$.description").value("Line one\nline \"two\""));
+
+      // existing isbn is updated
+      var ndjson = """
+          {"isbn":"9780000000002","title":"Renamed Book","author":"John Doe","publishedAt":2021,"publisher":"Import Press","language":"EN","pages":200}
+          not json
+          """;
+      mockMvc.perform(post("/library/api/books/import")
+              .contentType(MediaType.APPLICATION_NDJSON)
+              .content(ndjson)
+              .with(jwt))
+          .andExpect(status().isOk())
+          .andExpect(jsonPath("$.imported").value(1))
+          .andExpect(jsonPath("$.rejected").value(1));
+
+      mockMvc.perform(get("/library/api/books/9780000000002").with(jwt))
+          .andExpect(status().isOk())
+          .andExpect(jsonPath("$.title").value("Renamed Book"));
+    } finally {
+      List.of("9780000000001", "9780000000002").forEach(isbn -> bookRepository.findByIsbn(isbn).ifPresent(bookRepository::delete));
+    }
+  }
+
+  @Test
+  @WithMockUser
+  public void expectImportBooksWithNotRoleLibrarianShouldReturnForbidden() throws Exception {
+    mockMvc.perform(post("/library/api/books/import")
+            .contentType("text/csv")
+            .content("isbn,title")
+            .with(jwtWithRoles("demo_user_1")))
+        .andExpect(status().isForbidden());
+  }
+
+  @Test
+  @WithMockUser
+  public void expectExportBooksShouldStreamAllBooksWithLoanStatus() throws Exception {
+    loanService.borrowBook("9780132350884", "demo_user_1");
+    var jwt = jwtWithRoles("librarian", "LIBRARIAN");
+
+    var started = mockMvc.perform(get("/library/api/books/export").with(jwt))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+    var export = mockMvc.perform(asyncDispatch(started))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+        .andExpect(header().exists("X-Export-Timestamp"))
+        .andReturn().getResponse();
+
+    List<String> lines = export.getContentAsString().lines().toList();
+    assertEquals(bookRepository.count(), lines.size());
+    String cleanCode = lines.stream().filter(l -> l.contains("\"9780132350884\"")).findFirst().orElseThrow();
+    assertEquals(false, JsonPath.read(cleanCode, "$.loanStatus.available"));
+
+    // the loan just before the export lies within the overlap of the next since, the book is exported again
+    started = mockMvc.perform(get("/library/api/books/export")
+            .queryParam("since", export.getHeader("X-Export-Timestamp"))
+            .with(jwt))
+        .andReturn();
+    mockMvc.perform(asyncDispatch(started))
+        .andExpect(status().isOk())
+        .andExpect(content().string(containsString("\"9780132350884\"")));
+
+    // nothing changed since the export
+    started = mockMvc.perform(get("/library/api/books/export")
+            .queryParam("since", Instant.now().plusSeconds(1).toString())
+            .with(jwt))
+        .andReturn();
+    mockMvc.perform(asyncDispatch(started))
+        .andExpect(status().isOk())
+        .andExpect(content().string(""));
+  }
 }
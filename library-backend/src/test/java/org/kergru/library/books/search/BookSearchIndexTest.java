@@ -0,0 +1,127 @@
+package org.kergru.library.books.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kergru.library.books.repository.BookChangedEvent;
+import org.kergru.library.books.repository.BookRepository;
+import org.kergru.library.books.repository.BookSummaryProjection;
+
+class BookSearchIndexTest {
+
+  private BookRepository bookRepository;
+
+  private BookSearchIndex index;
+
+  @BeforeEach
+  void setUp() {
+    bookRepository = mock(BookRepository.class);
+    when(bookRepository.findSummariesAfter(eq(0L), any())).thenReturn(List.of(
+        book(1001L, "9780132350884", "Clean Code", "Robert C. Martin", 2008),
+        book(1002L, "9780134685991", "Effective Java", "Joshua Bloch", 2018),
+        book(1006L, "9780134494166", "Clean Architecture", "Robert C. Martin", 2017),
+        book(1009L, "9780321349606", "Java Concurrency in Practice", "Brian Goetz; et al.", 2006)
+    ));
+    index = new BookSearchIndex(bookRepository, true, Duration.ofMillis(50));
+  }
+
+  @Test
+  void expectSearchBeforeBuildReturnsEmpty() {
+    assertFalse(index.isReady());
+    assertTrue(index.search("clean", "title").isEmpty());
+  }
+
+  @Test
+  void expectAllTokensMustMatch() {
+    index.rebuild();
+
+    assertEquals(List.of(1001L), index.search("Clean Code", "title").orElseThrow());
+    assertEquals(List.of(1006L, 1001L), index.search("clean", "title").orElseThrow());
+    assertEquals(List.of(), index.search("clean java", "title").orElseThrow());
+  }
+
+  @Test
+  void expectPrefixAndIsbnMatches() {
+    index.rebuild();
+
+    assertEquals(List.of(1009L, 1002L), index.search("jav", "publishedAt").orElseThrow());
+    assertEquals(List.of(1002L), index.search("9780134685991", "title").orElseThrow());
+  }
+
+  @Test
+  void expectRelevanceRanksExactMatchFirst() {
+    when(bookRepository.findSummariesAfter(eq(0L), any())).thenReturn(List.of(
+        book(1L, "1", "Javascript Patterns", "Stoyan Stefanov", 2010),
+        book(2L, "2", "Java", "Someone", 2000)
+    ));
+    index.rebuild();
+
+    assertEquals(List.of(2L, 1L), index.search("java", BookSearchIndex.SORT_RELEVANCE).orElseThrow());
+  }
+
+  @Test
+  void expectUnsupportedSortOrderFallsBack() {
+    index.rebuild();
+
+    assertTrue(index.search("clean", "publisher").isEmpty());
+  }
+
+  @Test
+  void expectQueryWithoutTokensFallsBack() {
+    index.rebuild();
+
+    assertTrue(index.search("--", "title").isEmpty());
+  }
+
+  @Test
+  void expectFailedRebuildDropsSnapshotAndIsRetried() throws InterruptedException {
+    index.rebuild();
+    List<BookSummaryProjection> catalog = bookRepository.findSummariesAfter(0L, null);
+    when(bookRepository.findSummariesAfter(eq(0L), any()))
+        .thenThrow(new IllegalStateException("database down"))
+        .thenReturn(catalog);
+
+    index.rebuild();
+    assertFalse(index.isReady());
+    assertTrue(index.search("clean", "title").isEmpty());
+
+    for (int i = 0; i < 100 && !index.isReady(); i++) {
+      Thread.sleep(10);
+    }
+    assertTrue(index.isReady());
+    assertEquals(List.of(1006L, 1001L), index.search("clean", "title").orElseThrow());
+  }
+
+  @Test
+  void expectChangedBooksAreReindexed() {
+    index.rebuild();
+
+    when(bookRepository.findSummaryById(1002L)).thenReturn(Optional.empty());
+    index.onBookChanged(new BookChangedEvent(1002L, "9780134685991", true));
+    when(bookRepository.findSummaryById(1011L)).thenReturn(Optional.of(book(1011L, "9781617297571", "Spring Boot in Action", "Craig Walls", 2016)));
+    index.onBookChanged(new BookChangedEvent(1011L, "9781617297571", false));
+
+    assertEquals(List.of(1009L), index.search("java", "title").orElseThrow());
+    assertEquals(List.of(1011L), index.search("spring", "title").orElseThrow());
+  }
+
+  private static BookSummaryProjection book(Long id, String isbn, String title, String author, Integer publishedAt) {
+    return new BookSummaryProjection() {
+      public Long getId() { return id; }
+      public String getIsbn() { return isbn; }
+      public String getTitle() { return title; }
+      public String getAuthor() { return author; }
+      public Integer getPublishedAt() { return publishedAt; }
+    };
+  }
+}
@@ -0,0 +1,130 @@
+package org.kergru.library.loans;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.kergru.library.books.repository.BookRepository;
+import org.kergru.library.loans.repository.LoanRepository;
+import org.kergru.library.loans.service.BorrowStrategy;
+import org.kergru.library.loans.service.LoanService;
+import org.kergru.library.users.repository.UserRepository;
+import org.kergru.library.model.LoanDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/**
+ * Lets several threads borrow the same books at the same time, every book must be borrowed exactly once per round.
+ * Runs once per {@link BorrowStrategy} and prints the throughput of each.
+ */
+@Testcontainers
+@SpringBootTest
+public class BorrowConcurrencyTest {
+
+  private static final List<String> USERS = List.of("demo_user_1", "demo_user_2", "demo_user_3", "librarian");
+
+  private static final int THREADS = 8;
+
+  private static final int ROUNDS = 20;
+
+  @Autowired
+  private LoanRepository loanRepository;
+
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Autowired
+  private ApplicationEventPublisher eventPublisher;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  // Hack to create JwtDecoder bean by Spring Security
+  @DynamicPropertySource
+  static void registerProperties(DynamicPropertyRegistry registry) {
+    registry.add("spring.security.oauth2.resourceserver.jwt.jwk-set-uri",
+        () -> "http://localhost:8085/realms/library/protocol/openid-connect/certs");
+  }
+
+  @ParameterizedTest
+  @EnumSource(BorrowStrategy.class)
+  public void expectConcurrentBorrowsShouldNeverLendABookTwice(BorrowStrategy strategy) throws Exception {
+    LoanService loanService = new LoanService(loanRepository, userRepository, bookRepository, eventPublisher, strategy);
+    List<String> isbns = jdbcTemplate.queryForList("""
+        SELECT isbn FROM books b WHERE NOT EXISTS (SELECT 1 FROM loans l WHERE l.book_id = b.id AND l.returned_at IS NULL)
+        """, String.class);
+    assertFalse(isbns.isEmpty());
+
+    AtomicInteger attempts = new AtomicInteger();
+    long elapsedNanos = 0;
+
+    try (ExecutorService executor = Executors.newFixedThreadPool(THREADS)) {
+      for (int round = 0; round < ROUNDS; round++) {
+        Map<String, List<LoanDto>> loansByIsbn = new ConcurrentHashMap<>();
+        Map<LoanDto, String> borrowers = new ConcurrentHashMap<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+          String userName = USERS.get(t % USERS.size());
+          List<String> order = new ArrayList<>(isbns);
+          Collections.shuffle(order);
+          futures.add(executor.submit(() -> {
+            start.await();
+            for (String isbn : order) {
+              attempts.incrementAndGet();
+              try {
+                LoanDto loan = loanService.borrowBook(isbn, userName);
+                loansByIsbn.computeIfAbsent(isbn, i -> Collections.synchronizedList(new ArrayList<>())).add(loan);
+                borrowers.put(loan, userName);
+              } catch (IllegalStateException e) {
+                // already borrowed
+              }
+            }
+            return null;
+          }));
+        }
+
+        long roundStart = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+          future.get();
+        }
+        elapsedNanos += System.nanoTime() - roundStart;
+
+        for (String isbn : isbns) {
+          assertEquals(1, loansByIsbn.getOrDefault(isbn, List.of()).size(), "loans of " + isbn);
+        }
+        assertEquals(0, jdbcTemplate.queryForObject("""
+            SELECT COUNT(*) FROM (
+              SELECT book_id FROM loans WHERE returned_at IS NULL GROUP BY book_id HAVING COUNT(*) > 1
+            ) double_loans
+            """, Integer.class));
+
+        borrowers.forEach((loan, userName) -> loanService.returnBook(loan.id(), userName));
+      }
+    }
+
+    System.out.printf("%s: %d borrow attempts by %d threads in %d ms, %d borrows/s%n",
+        strategy, attempts.get(), THREADS, elapsedNanos / 1_000_000, Math.round(attempts.get() * 1e9 / elapsedNanos));
+  }
+}
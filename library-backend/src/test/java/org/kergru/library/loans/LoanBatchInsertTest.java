@@ -0,0 +1,81 @@
+package org.kergru.library.loans;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.kergru.library.loans.repository.LoanRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/**
+ * Batch insert of active loans: books already borrowed are skipped, other errors fail the batch.
+ */
+@Testcontainers
+@SpringBootTest
+@Transactional
+public class LoanBatchInsertTest {
+
+  private static final long DEMO_USER_1 = 1L;
+
+  @Autowired
+  private LoanRepository loanRepository;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  // Hack to create JwtDecoder bean by Spring Security
+  @DynamicPropertySource
+  static void registerProperties(DynamicPropertyRegistry registry) {
+    registry.add("spring.security.oauth2.resourceserver.jwt.jwk-set-uri",
+        () -> "http://localhost:8085/realms/library/protocol/openid-connect/certs");
+  }
+
+  @Test
+  public void expectBorrowedBooksAreSkipped() {
+    List<Long> available = availableBooks();
+    long borrowedBook = available.get(0);
+    long availableBook = available.get(1);
+    loanRepository.insertActiveLoans(DEMO_USER_1, List.of(borrowedBook), now());
+
+    Map<Long, Long> inserted = loanRepository.insertActiveLoans(DEMO_USER_1, List.of(borrowedBook, availableBook), now());
+
+    assertEquals(List.of(availableBook), List.copyOf(inserted.keySet()));
+    assertEquals(1, activeLoans(borrowedBook));
+    assertEquals(1, activeLoans(availableBook));
+  }
+
+  @Test
+  public void expectUnknownBookFailsTheBatch() {
+    long unknownBook = jdbcTemplate.queryForObject("SELECT MAX(id) + 1000 FROM books", Long.class);
+
+    assertThrows(DataIntegrityViolationException.class,
+        () -> loanRepository.insertActiveLoans(DEMO_USER_1, List.of(availableBooks().get(0), unknownBook), now()));
+  }
+
+  // other tests borrow and return the seed books, so the books are picked by their current state
+  private List<Long> availableBooks() {
+    return jdbcTemplate.queryForList(
+        "SELECT id FROM books b WHERE NOT EXISTS (SELECT 1 FROM loans l WHERE l.active_book_id = b.id) ORDER BY id LIMIT 2",
+        Long.class);
+  }
+
+  private int activeLoans(long bookId) {
+    return jdbcTemplate.queryForObject(
+        "SELECT COUNT(*) FROM loans WHERE book_id = ? AND returned_at IS NULL", Integer.class, bookId);
+  }
+
+  private static Instant now() {
+    return Instant.now().truncatedTo(ChronoUnit.MICROS);
+  }
+}
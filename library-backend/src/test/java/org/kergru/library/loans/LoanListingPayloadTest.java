@@ -0,0 +1,121 @@
+package org.kergru.library.loans;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.kergru.library.JwtTestUtils.jwtWithRoles;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.jayway.jsonpath.JsonPath;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/**
+ * Lists the loans of a user with a long history and prints payload size and response time of the loan listings.
+ */
+@AutoConfigureMockMvc
+@Testcontainers
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class LoanListingPayloadTest {
+
+  private static final long FIRST_BOOK_ID = 900_001;
+
+  private static final int BOOKS = 50;
+
+  private static final int LOANS = 2_000;
+
+  private static final String DESCRIPTION = "Lorem ipsum dolor sit amet, consectetur adipiscing elit. ".repeat(25);
+
+  private static final int RUNS = 10;
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  // Hack to create JwtDecoder bean by Spring Security
+  @DynamicPropertySource
+  static void registerProperties(DynamicPropertyRegistry registry) {
+    registry.add("spring.security.oauth2.resourceserver.jwt.jwk-set-uri",
+        () -> "http://localhost:8085/realms/library/protocol/openid-connect/certs");
+  }
+
+  @BeforeEach
+  public void createHistory() {
+    List<Object[]> books = new ArrayList<>();
+    List<Object[]> descriptions = new ArrayList<>();
+    for (int i = 0; i < BOOKS; i++) {
+      books.add(new Object[] {FIRST_BOOK_ID + i, "payload-" + i, "Payload Book " + i, "Author " + i});
+      descriptions.add(new Object[] {FIRST_BOOK_ID + i, DESCRIPTION});
+    }
+    jdbcTemplate.batchUpdate("""
+        INSERT INTO books (id, isbn, title, author, published_at, publisher, language, pages)
+        VALUES (?, ?, ?, ?, 2000, 'Publisher', 'EN', 100)
+        """, books);
+    jdbcTemplate.batchUpdate("INSERT INTO book_descriptions (book_id, description) VALUES (?, ?)", descriptions);
+
+    Long userId = jdbcTemplate.queryForObject("SELECT id FROM users WHERE username = 'demo_user_3'", Long.class);
+    Instant start = Instant.now().minus(LOANS, ChronoUnit.DAYS);
+    List<Object[]> loans = new ArrayList<>();
+    for (int i = 0; i < LOANS; i++) {
+      Instant borrowedAt = start.plus(i, ChronoUnit.DAYS);
+      loans.add(new Object[] {userId, FIRST_BOOK_ID + i % BOOKS, Timestamp.from(borrowedAt),
+          Timestamp.from(borrowedAt.plus(12, ChronoUnit.HOURS))});
+    }
+    jdbcTemplate.batchUpdate("INSERT INTO loans (user_id, book_id, borrowed_at, returned_at) VALUES (?, ?, ?, ?)", loans);
+  }
+
+  @AfterEach
+  public void deleteHistory() {
+    jdbcTemplate.update("DELETE FROM loans WHERE book_id >= ?", FIRST_BOOK_ID);
+    jdbcTemplate.update("DELETE FROM books WHERE id >= ?", FIRST_BOOK_ID);
+  }
+
+  @Test
+  @WithMockUser
+  public void expectLoanListingsShouldNotCarryBookDescriptions() throws Exception {
+    var jwt = jwtWithRoles("librarian", "LIBRARIAN");
+
+    String all = measure("all loans", get("/library/api/users/demo_user_3/loans").with(jwt));
+    assertTrue(JsonPath.<List<?>>read(all, "$").size() >= LOANS);
+    assertFalse(all.contains(DESCRIPTION));
+
+    String page = measure("history page", get("/library/api/users/demo_user_3/loans/history").param("size", "100").with(jwt));
+    assertEquals(100, JsonPath.<List<?>>read(page, "$.content").size());
+    assertFalse(page.contains(DESCRIPTION));
+  }
+
+  private String measure(String name, MockHttpServletRequestBuilder request) throws Exception {
+    String body = null;
+    long[] millis = new long[RUNS];
+    for (int i = -3; i < RUNS; i++) {
+      long start = System.nanoTime();
+      body = mockMvc.perform(request).andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+      if (i >= 0) {
+        millis[i] = (System.nanoTime() - start) / 1_000_000;
+      }
+    }
+    Arrays.sort(millis);
+    System.out.printf("%s: %d bytes, median %d ms%n", name, body.getBytes().length, millis[RUNS / 2]);
+    return body;
+  }
+}
@@ -0,0 +1,159 @@
+package org.kergru.library.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.source.ImmutableJWKSet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.JwsHeader;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.security.oauth2.jwt.NimbusJwtEncoder;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+
+class CachingJwtDecoderTest {
+
+  private static final int ITERATIONS = 5_000;
+
+  private NimbusJwtDecoder rs256Decoder;
+
+  private NimbusJwtEncoder rs256Encoder;
+
+  private AtomicInteger decodes;
+
+  private CachingJwtDecoder decoder;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(2048);
+    KeyPair keyPair = generator.generateKeyPair();
+    RSAKey key = new RSAKey.Builder((RSAPublicKey) keyPair.getPublic()).privateKey((RSAPrivateKey) keyPair.getPrivate()).build();
+    rs256Encoder = new NimbusJwtEncoder(new ImmutableJWKSet<>(new JWKSet(key)));
+    rs256Decoder = NimbusJwtDecoder.withPublicKey((RSAPublicKey) keyPair.getPublic()).build();
+
+    decodes = new AtomicInteger();
+    decoder = new CachingJwtDecoder(token -> {
+      decodes.incrementAndGet();
+      return rs256Decoder.decode(token);
+    }, 100, Clock.systemUTC());
+  }
+
+  @Test
+  void expectTokenIsValidatedAndMappedOnce() {
+    String token = token("demo_user_1", Instant.now().plusSeconds(300));
+    AtomicInteger mappings = new AtomicInteger();
+    var authorities = decoder.cachingAuthorities(jwt -> {
+      mappings.incrementAndGet();
+      return List.of(() -> "ROLE_LIBRARIAN");
+    });
+
+    Jwt first = decoder.decode(token);
+    Jwt second = decoder.decode(token);
+
+    assertSame(first, second);
+    assertEquals(1, decodes.get());
+    assertSame(authorities.convert(first), authorities.convert(second));
+    assertEquals(1, mappings.get());
+  }
+
+  @Test
+  void expectExpiredAndInvalidTokensAreNotCached() {
+    String expired = "expired";
+    CachingJwtDecoder decoder = new CachingJwtDecoder(token -> {
+      decodes.incrementAndGet();
+      return Jwt.withTokenValue(token).header("alg", "none").subject("demo_user_1")
+          .issuedAt(Instant.now().minusSeconds(600)).expiresAt(Instant.now().minusSeconds(1)).build();
+    }, 100, Clock.systemUTC());
+    decoder.decode(expired);
+    decoder.decode(expired);
+    assertEquals(2, decodes.get());
+
+    String tampered = token("demo_user_1", Instant.now().plusSeconds(300)) + "x";
+    assertThrows(BadJwtException.class, () -> this.decoder.decode(tampered));
+    assertThrows(BadJwtException.class, () -> this.decoder.decode(tampered));
+    assertEquals(0, this.decoder.size());
+  }
+
+  @Test
+  void expectCacheIsBoundedAndPublishesMetrics() {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    CachingJwtDecoder decoder = new CachingJwtDecoder(rs256Decoder, 10, Clock.systemUTC()).bindTo(registry);
+    for (int i = 0; i < 50; i++) {
+      decoder.decode(token("user_" + i, Instant.now().plusSeconds(300)));
+    }
+    String token = token("demo_user_1", Instant.now().plusSeconds(300));
+    decoder.decode(token);
+    decoder.decode(token);
+
+    assertTrue(decoder.size() <= 10);
+    assertEquals(1.0, registry.get("cache.gets").tag("cache", CachingJwtDecoder.CACHE_NAME).tag("result", "hit").functionCounter().count());
+  }
+
+  /**
+   * Microbenchmark of the authentication of a request: RS256 signature check, claim validation and authority mapping
+   * against a cache hit.
+   */
+  @Test
+  void expectCachedAuthenticationIsCheaperThanValidation() {
+    String token = token("demo_user_1", Instant.now().plusSeconds(300));
+    // the decoder passed to the uncached converter never decodes, so its authorities are never cached
+    JwtAuthenticationConverter uncachedConverter = new OAuth2SecurityConfig()
+        .jwtAuthenticationConverter(new CachingJwtDecoder(rs256Decoder, 1, Clock.systemUTC()));
+    JwtAuthenticationConverter cachedConverter = new OAuth2SecurityConfig().jwtAuthenticationConverter(decoder);
+
+    long uncached = nanosPerRequest(() -> uncachedConverter.convert(rs256Decoder.decode(token)));
+    long cached = nanosPerRequest(() -> cachedConverter.convert(decoder.decode(token)));
+
+    assertEquals(1, decodes.get());
+    assertTrue(cached < uncached, "cached " + cached + " ns, uncached " + uncached + " ns");
+    System.out.printf("JWT authentication: validated %d us/request, cached %d us/request%n", uncached / 1_000, cached / 1_000);
+  }
+
+  private static long nanosPerRequest(Supplier<AbstractAuthenticationToken> authentication) {
+    for (int i = 0; i < ITERATIONS; i++) { // warm up
+      authentication.get();
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      Collection<GrantedAuthority> authorities = authentication.get().getAuthorities();
+      assertTrue(authorities.stream().anyMatch(a -> a.getAuthority().equals("ROLE_LIBRARIAN")));
+    }
+    return (System.nanoTime() - start) / ITERATIONS;
+  }
+
+  private String token(String username, Instant expiresAt) {
+    JwtClaimsSet claims = JwtClaimsSet.builder()
+        .subject(username)
+        .claim("preferred_username", username)
+        .claim("realm_access", Map.of("roles", List.of("LIBRARIAN")))
+        .claim("scope", "openid profile email")
+        .issuedAt(Instant.now())
+        .expiresAt(expiresAt)
+        .build();
+    return rs256Encoder.encode(JwtEncoderParameters.from(JwsHeader.with(SignatureAlgorithm.RS256).build(), claims)).getTokenValue();
+  }
+}
@@ -0,0 +1,152 @@
+package org.kergru.library.security;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.source.ImmutableJWKSet;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.security.oauth2.resource.OAuth2ResourceServerProperties;
+import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
+import org.springframework.security.oauth2.jwt.JwsHeader;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.NimbusJwtEncoder;
+
+/**
+ * Runs the {@link JwkSetCache} against a local JWKS stub, tokens are signed with the keys of the stub.
+ */
+class JwkSetCacheTest {
+
+  private HttpServer jwksStub;
+
+  private volatile int stubStatus = 200;
+
+  private volatile JWKSet stubKeys;
+
+  private final AtomicInteger stubRequests = new AtomicInteger();
+
+  private SimpleMeterRegistry meterRegistry;
+
+  private JwkSetCache jwkSetCache;
+
+  private JwtDecoder decoder;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    jwksStub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    jwksStub.createContext("/certs", exchange -> {
+      stubRequests.incrementAndGet();
+      byte[] body = stubKeys.toString(true).getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(stubStatus, body.length);
+      exchange.getResponseBody().write(body);
+      exchange.close();
+    });
+    jwksStub.start();
+
+    meterRegistry = new SimpleMeterRegistry();
+    jwkSetCache = new JwkSetCache(URI.create("http://localhost:" + jwksStub.getAddress().getPort() + "/certs"),
+        Duration.ofHours(1), Duration.ofSeconds(1), Duration.ofHours(1), Duration.ZERO, meterRegistry);
+    decoder = new OAuth2SecurityConfig().jwtDecoder(new OAuth2ResourceServerProperties(), jwkSetCache, meterRegistry, 0);
+  }
+
+  @AfterEach
+  void tearDown() {
+    jwkSetCache.stop();
+    jwksStub.stop(0);
+  }
+
+  @Test
+  void expectKeysArePreloadedAndNotFetchedByRequests() throws Exception {
+    RSAKey key = rsaKey("k1");
+    stubKeys = new JWKSet(key.toPublicJWK());
+
+    jwkSetCache.start();
+    assertEquals(1, stubRequests.get());
+
+    for (int i = 0; i < 3; i++) {
+      decoder.decode(token(key, "demo_user_1"));
+    }
+    assertEquals(1, stubRequests.get());
+    assertEquals(1, meterRegistry.get("library.jwks.refresh").tag("outcome", "success").timer().count());
+  }
+
+  @Test
+  void expectUnknownKidTriggersRefresh() throws Exception {
+    RSAKey oldKey = rsaKey("k1");
+    RSAKey newKey = rsaKey("k2");
+    stubKeys = new JWKSet(oldKey.toPublicJWK());
+    jwkSetCache.start();
+
+    // key rotation at the issuer
+    stubKeys = new JWKSet(newKey.toPublicJWK());
+    decoder.decode(token(newKey, "demo_user_1"));
+
+    assertEquals(2, stubRequests.get());
+    assertEquals(1.0, meterRegistry.get("library.jwks.unknown.kid").counter().count());
+  }
+
+  @Test
+  void expectStaleKeysAreServedIfIssuerFails() throws Exception {
+    RSAKey key = rsaKey("k1");
+    stubKeys = new JWKSet(key.toPublicJWK());
+    jwkSetCache.start();
+
+    stubStatus = 503;
+    jwkSetCache.refresh(Instant.now());
+
+    assertDoesNotThrow(() -> decoder.decode(token(key, "demo_user_1")));
+    assertEquals(1, meterRegistry.get("library.jwks.refresh").tag("outcome", "failure").timer().count());
+  }
+
+  @Test
+  void expectUnreachableIssuerDoesNotFailStartup() throws Exception {
+    RSAKey key = rsaKey("k1");
+    stubKeys = new JWKSet(key.toPublicJWK());
+    stubStatus = 503;
+
+    assertDoesNotThrow(jwkSetCache::start);
+    assertThrows(JwtException.class, () -> decoder.decode(token(key, "demo_user_1")));
+
+    // issuer is back, the next request loads the keys
+    stubStatus = 200;
+    assertDoesNotThrow(() -> decoder.decode(token(key, "demo_user_1")));
+  }
+
+  private static RSAKey rsaKey(String kid) throws Exception {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(2048);
+    var keyPair = generator.generateKeyPair();
+    return new RSAKey.Builder((RSAPublicKey) keyPair.getPublic()).privateKey((RSAPrivateKey) keyPair.getPrivate()).keyID(kid).build();
+  }
+
+  private static String token(RSAKey key, String username) {
+    JwtClaimsSet claims = JwtClaimsSet.builder()
+        .subject(username)
+        .claim("preferred_username", username)
+        .issuedAt(Instant.now())
+        .expiresAt(Instant.now().plusSeconds(300))
+        .build();
+    return new NimbusJwtEncoder(new ImmutableJWKSet<>(new JWKSet(key)))
+        .encode(JwtEncoderParameters.from(JwsHeader.with(SignatureAlgorithm.RS256).keyId(key.getKeyID()).build(), claims))
+        .getTokenValue();
+  }
+}
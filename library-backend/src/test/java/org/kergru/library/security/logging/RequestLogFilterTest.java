@@ -0,0 +1,156 @@
+package org.kergru.library.security.logging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+class RequestLogFilterTest {
+
+  private static final int ITERATIONS = 200_000;
+
+  private static final FilterChain NO_OP_CHAIN = (request, response) -> { };
+
+  private final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+
+  private SimpleMeterRegistry meterRegistry;
+
+  private RequestLog requestLog;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    requestLog = new RequestLog(100, meterRegistry, lines::add);
+    Jwt jwt = Jwt.withTokenValue("secret-token").header("alg", "none")
+        .claim("preferred_username", "demo_user_1")
+        .issuedAt(Instant.now()).expiresAt(Instant.now().plusSeconds(300))
+        .build();
+    SecurityContextHolder.getContext().setAuthentication(new JwtAuthenticationToken(jwt));
+  }
+
+  @AfterEach
+  void tearDown() {
+    requestLog.stop();
+    SecurityContextHolder.clearContext();
+  }
+
+  @Test
+  void expectSampledRequestIsLoggedWithoutToken() throws Exception {
+    RequestLogFilter filter = new RequestLogFilter(requestLog, 1, Duration.ofHours(1));
+
+    filter.doFilter(request(), new MockHttpServletResponse(), NO_OP_CHAIN);
+
+    String line = lines.poll(5, TimeUnit.SECONDS);
+    assertNotNull(line);
+    assertTrue(line.contains("method=GET path=/library/api/books status=200"), line);
+    assertTrue(line.contains("user=demo_user_1 reason=sampled"), line);
+    assertFalse(line.contains("secret-token"), line);
+    assertFalse(line.contains("access_token"), line);
+  }
+
+  @Test
+  void expectOnlySlowRequestsAreLoggedWithoutSampling() throws Exception {
+    RequestLogFilter filter = new RequestLogFilter(requestLog, 0, Duration.ofMillis(50));
+
+    filter.doFilter(request(), new MockHttpServletResponse(), NO_OP_CHAIN);
+    filter.doFilter(request(), new MockHttpServletResponse(), (request, response) -> sleep(60));
+
+    String line = lines.poll(5, TimeUnit.SECONDS);
+    assertNotNull(line);
+    assertTrue(line.contains("reason=slow"), line);
+    assertNull(lines.poll(100, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  void expectEntriesAreDroppedIfQueueIsFull() throws Exception {
+    CountDownLatch writerBlocked = new CountDownLatch(1);
+    RequestLog blockedLog = new RequestLog(1, meterRegistry, line -> {
+      try {
+        writerBlocked.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    RequestLogFilter filter = new RequestLogFilter(blockedLog, 1, Duration.ofHours(1));
+
+    for (int i = 0; i < 10; i++) {
+      filter.doFilter(request(), new MockHttpServletResponse(), NO_OP_CHAIN);
+    }
+    writerBlocked.countDown();
+    blockedLog.stop();
+
+    assertTrue(meterRegistry.get("library.request.log.dropped").counter().count() >= 8);
+  }
+
+  /**
+   * Microbenchmark of the overhead per request: without filter (request log disabled), sampled 1 in 100 and every request logged.
+   */
+  @Test
+  void expectFilterOverheadPerRequest() throws Exception {
+    RequestLog discardingLog = new RequestLog(10_000, meterRegistry, line -> { });
+    try {
+      long disabled = nanosPerRequest(null);
+      long sampled = nanosPerRequest(new RequestLogFilter(discardingLog, 100, Duration.ofHours(1)));
+      long all = nanosPerRequest(new RequestLogFilter(discardingLog, 1, Duration.ofHours(1)));
+
+      System.out.printf("request log overhead: disabled %d ns/request, 1 in 100 %d ns/request, all %d ns/request%n",
+          disabled, sampled, all);
+      assertEquals(0, lines.size());
+    } finally {
+      discardingLog.stop();
+    }
+  }
+
+  private static long nanosPerRequest(Filter filter) throws Exception {
+    MockHttpServletRequest request = request();
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    for (int round = 0; round < 2; round++) { // first round warms up
+      long start = System.nanoTime();
+      for (int i = 0; i < ITERATIONS; i++) {
+        if (filter == null) {
+          NO_OP_CHAIN.doFilter(request, response);
+        } else {
+          filter.doFilter(request, response, NO_OP_CHAIN);
+        }
+      }
+      if (round == 1) {
+        return (System.nanoTime() - start) / ITERATIONS;
+      }
+    }
+    throw new IllegalStateException();
+  }
+
+  private static MockHttpServletRequest request() {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/library/api/books");
+    request.setQueryString("access_token=secret-token");
+    request.addHeader("Authorization", "Bearer secret-token");
+    return request;
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -2,6 +2,7 @@ package org.kergru.library.users;
 
 import static org.hamcrest.Matchers.containsString;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.kergru.library.JwtTestUtils.jwtWithRoles;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
@@ -11,14 +12,19 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.JsonPath;
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.kergru.library.loans.repository.LoanRepository;
 import org.kergru.library.loans.service.LoanService;
+import org.kergru.library.model.ReturnRequestDto;
 import org.kergru.library.model.UserDto;
 import org.kergru.library.users.repository.UserEntity;
 import org.kergru.library.users.repository.UserRepository;
+import org.kergru.library.users.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -32,7 +38,7 @@ import org.testcontainers.junit.jupiter.Testcontainers;
 
 @AutoConfigureMockMvc
 @Testcontainers
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "library.loans.borrow-strategy=entity")
 public class UserControllerTest {
 
   private static final String NEW_USER_USERNAME = "johndoe";
@@ -43,6 +49,9 @@ public class UserControllerTest {
   @Autowired
   private UserRepository userRepository;
 
+  @Autowired
+  private UserService userService;
+
   @Autowired
   private LoanService loanService;
 
@@ -118,6 +127,62 @@ public class UserControllerTest {
         .andExpect(status().isOk())
         .andExpect(content().string(containsString("demo_user_1")));
   }
+  @Test
+  @WithMockUser
+  public void expectSearchUsersInSummaryViewShouldOmitEmail() throws Exception {
+    var jwt = jwtWithRoles("librarian", "LIBRARIAN");
+    String firstPage = mockMvc.perform(get("/library/api/users")
+            .queryParam("searchString", "demo")
+            .queryParam("size", "2")
+            .queryParam("sortBy", "email")
+            .queryParam("view", "SUMMARY")
+            .with(jwt))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.content[0].userName").value("demo_user_1"))
+        .andExpect(jsonPath("$.content[0].lastName").value("Eins"))
+        .andExpect(jsonPath("$.content[0].email").doesNotExist())
+        .andReturn().getResponse().getContentAsString();
+
+    mockMvc.perform(get("/library/api/users")
+            .queryParam("searchString", "demo")
+            .queryParam("size", "2")
+            .queryParam("cursor", JsonPath.<String>read(firstPage, "$.nextCursor"))
+            .queryParam("view", "SUMMARY")
+            .with(jwt))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.content[0].userName").value("demo_user_3"))
+        .andExpect(jsonPath("$.content[0].email").doesNotExist());
+  }
+
+  @Test
+  @WithMockUser
+  public void expectSearchUsersByCursorShouldContinueLikeNextPage() throws Exception {
+    var jwt = jwtWithRoles("librarian", "LIBRARIAN");
+    String firstPage = mockMvc.perform(get("/library/api/users")
+            .queryParam("searchString", "demo")
+            .queryParam("size", "2")
+            .with(jwt))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+    String secondPage = mockMvc.perform(get("/library/api/users")
+            .queryParam("page", "1")
+            .queryParam("searchString", "demo")
+            .queryParam("size", "2")
+            .with(jwt))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+
+    mockMvc.perform(get("/library/api/users")
+            .queryParam("searchString", "demo")
+            .queryParam("size", "2")
+            .queryParam("cursor", JsonPath.<String>read(firstPage, "$.nextCursor"))
+            .with(jwt))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.content[0].userName").value("demo_user_3"))
+        .andExpect(jsonPath("$.nextCursor").doesNotExist())
+        .andExpect(jsonPath("$.content[*].userName").value(JsonPath.<List<String>>read(secondPage, "$.content[*].userName")));
+  }
+
   @Test
   @WithMockUser
   public void expectSearchUsersWithNotRoleLibrarianShouldReturnForbidden() throws Exception {
@@ -145,6 +210,27 @@ public class UserControllerTest {
         .andExpect(jsonPath("$.book.isbn").value(isbn));
   }
 
+  @Test
+  @WithMockUser
+  public void expectBorrowSameBookTwiceShouldReturnConflict() throws Exception {
+    // the entity strategy relies on the unique key uk_loans_active_book to detect the conflict
+    var isbn = "9781617294945";
+    var jwt = jwtWithRoles("demo_user_1");
+
+    mockMvc.perform(post("/library/api/users/demo_user_1/loans")
+            .content(isbn)
+            .contentType(MediaType.APPLICATION_JSON)
+            .with(jwt)
+        )
+        .andExpect(status().isOk());
+    mockMvc.perform(post("/library/api/users/demo_user_1/loans")
+            .content(isbn)
+            .contentType(MediaType.APPLICATION_JSON)
+            .with(jwt)
+        )
+        .andExpect(status().isConflict());
+  }
+
   @Test
   @WithMockUser
   public void expectBorrowAlreadyBorrowedBookShouldReturnConflict() throws Exception {
@@ -162,6 +248,37 @@ public class UserControllerTest {
         .andExpect(status().isConflict());
   }
 
+  @Test
+  @WithMockUser
+  public void expectBorrowBooksShouldReturnResultPerIsbn() throws Exception {
+    //borrow one of the books by another user
+    loanService.borrowBook("9781617294945", "demo_user_2");
+
+    var jwt = jwtWithRoles("demo_user_1");
+    mockMvc.perform(post("/library/api/users/demo_user_1/loans/batch")
+            .content(objectMapper.writeValueAsString(List.of("9780134685991", "9781617294945", "unknown-isbn", "9780134757599")))
+            .contentType(MediaType.APPLICATION_JSON)
+            .with(jwt)
+        )
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(4))
+        .andExpect(jsonPath("$[0].status").value("BORROWED"))
+        .andExpect(jsonPath("$[0].loan.book.isbn").value("9780134685991"))
+        .andExpect(jsonPath("$[1].status").value("ALREADY_BORROWED"))
+        .andExpect(jsonPath("$[2].status").value("NOT_FOUND"))
+        .andExpect(jsonPath("$[3].status").value("BORROWED"));
+
+    // borrowed books are not available anymore
+    mockMvc.perform(post("/library/api/users/demo_user_1/loans")
+            .content("9780134757599")
+            .contentType(MediaType.APPLICATION_JSON)
+            .with(jwt)
+        )
+        .andExpect(status().isConflict());
+    var borrowedIsbns = loanService.findBorrowedByUser("demo_user_1").stream().map(l -> l.book().isbn()).toList();
+    assertTrue(borrowedIsbns.containsAll(List.of("9780134685991", "9780134757599")));
+  }
+
   @Test
   @WithMockUser
   public void expectReturnBookShouldReturnOk() throws Exception {
@@ -189,6 +306,169 @@ public class UserControllerTest {
         .andExpect(status().isNotFound());
   }
 
+  @Test
+  @WithMockUser
+  public void expectLoanHistoryShouldBeFilteredAndPaged() throws Exception {
+    var from = Instant.now().minusSeconds(1).toString();
+    var returned = loanService.borrowBook("9781617294945", "demo_user_1");
+    loanService.borrowBook("9780134685991", "demo_user_1");
+    var newest = loanService.borrowBook("9780134757599", "demo_user_1");
+    loanService.returnBook(returned.id(), "demo_user_1");
+
+    var jwt = jwtWithRoles("demo_user_1");
+    mockMvc.perform(get("/library/api/users/demo_user_1/loans/history")
+            .param("status", "ACTIVE")
+            .param("from", from)
+            .param("size", "1")
+            .with(jwt)
+        )
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.totalElements").value(2))
+        .andExpect(jsonPath("$.totalPages").value(2))
+        .andExpect(jsonPath("$.content.length()").value(1))
+        .andExpect(jsonPath("$.content[0].id").value(newest.id()))
+        .andExpect(jsonPath("$.content[0].book.isbn").value("9780134757599"));
+
+    mockMvc.perform(get("/library/api/users/demo_user_1/loans/history")
+            .param("status", "RETURNED")
+            .param("from", from)
+            .with(jwt)
+        )
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.totalElements").value(1))
+        .andExpect(jsonPath("$.content[0].id").value(returned.id()))
+        .andExpect(jsonPath("$.content[0].returnedAt").isNotEmpty());
+
+    mockMvc.perform(get("/library/api/users/demo_user_1/loans/history")
+            .param("from", from)
+            .param("to", from)
+            .with(jwt)
+        )
+        .andExpect(status().isBadRequest());
+
+    mockMvc.perform(get("/library/api/users/demo_user_2/loans/history")
+            .with(jwt)
+        )
+        .andExpect(status().isForbidden());
+  }
+
+  @Test
+  @WithMockUser
+  public void expectReturnBooksShouldReturnResultPerItem() throws Exception {
+    var loan = loanService.borrowBook("9781617294945", "demo_user_1");
+    loanService.borrowBook("9780134685991", "demo_user_2");
+
+    var jwt = jwtWithRoles("librarian", "LIBRARIAN");
+    var request = new ReturnRequestDto(List.of(loan.id(), -1L), List.of("9780134685991", "9780134757599", "unknown-isbn"));
+    mockMvc.perform(post("/library/api/loans/returns")
+            .content(objectMapper.writeValueAsString(request))
+            .contentType(MediaType.APPLICATION_JSON)
+            .with(jwt)
+        )
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(5))
+        .andExpect(jsonPath("$[0].status").value("RETURNED"))
+        .andExpect(jsonPath("$[0].isbn").value("9781617294945"))
+        .andExpect(jsonPath("$[1].status").value("NOT_BORROWED"))
+        .andExpect(jsonPath("$[2].status").value("RETURNED"))
+        .andExpect(jsonPath("$[3].status").value("NOT_BORROWED"))
+        .andExpect(jsonPath("$[4].status").value("NOT_FOUND"));
+
+    // returned books can be borrowed again
+    loanService.borrowBook("9781617294945", "demo_user_2");
+    loanService.borrowBook("9780134685991", "demo_user_1");
+
+    mockMvc.perform(post("/library/api/loans/returns")
+            .content(objectMapper.writeValueAsString(new ReturnRequestDto(null, List.of("9781617294945"))))
+            .contentType(MediaType.APPLICATION_JSON)
+            .with(jwt)
+        )
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$[0].status").value("RETURNED"));
+  }
+
+  @Test
+  @WithMockUser
+  public void expectReturnBooksWithNotRoleLibrarianShouldReturnForbidden() throws Exception {
+    var jwt = jwtWithRoles("demo_user_1");
+
+    mockMvc.perform(post("/library/api/loans/returns")
+            .content(objectMapper.writeValueAsString(new ReturnRequestDto(List.of(1L), null)))
+            .contentType(MediaType.APPLICATION_JSON)
+            .with(jwt)
+        )
+        .andExpect(status().isForbidden());
+  }
+
+  @Test
+  @WithMockUser
+  public void expectImportUsersShouldReportDuplicatesPerLine() throws Exception {
+    var jwt = jwtWithRoles("librarian", "LIBRARIAN");
+    // not found result is cached before the import
+    mockMvc.perform(get("/library/api/users/import_user_1").with(jwt))
+        .andExpect(status().isNotFound());
+
+    var ndjson = """
+        {"userName":"import_user_1","firstName":"Import","lastName":"One","email":"import1@example.test"}
+        {"userName":"demo_user_1","firstName":"Demo","lastName":"Again","email":"import-demo1@example.test"}
+        {"userName":"import_user_2","firstName":"Import","lastName":"Two","email":"demo2@example.test"}
+        {"userName":"import_user_1","firstName":"Import","lastName":"One","email":"import1@example.test"}
+        no json
+
+        {"userName":"import_user_3","firstName":"Import","lastName":"Three","email":"import3@example.test"}
+        """;
+    try {
+      mockMvc.perform(post("/library/api/users/import")
+              .content(ndjson)
+              .contentType(MediaType.APPLICATION_NDJSON)
+              .with(jwt)
+          )
+          .andExpect(status().isOk())
+          .andExpect(jsonPath("$.imported").value(2))
+          .andExpect(jsonPath("$.rejected").value(4))
+          .andExpect(jsonPath("$.rejectedRows[0].line").value(5))
+          .andExpect(jsonPath("$.rejectedRows[1].line").value(2))
+          .andExpect(jsonPath("$.rejectedRows[1].hints").value("username"))
+          .andExpect(jsonPath("$.rejectedRows[2].line").value(3))
+          .andExpect(jsonPath("$.rejectedRows[2].hints").value("email"))
+          .andExpect(jsonPath("$.rejectedRows[3].line").value(4))
+          .andExpect(jsonPath("$.rejectedRows[3].hints").value("username, email"));
+
+      mockMvc.perform(get("/library/api/users/import_user_1").with(jwt))
+          .andExpect(status().isOk());
+      mockMvc.perform(get("/library/api/users/import_user_3").with(jwt))
+          .andExpect(status().isOk());
+    } finally {
+      userService.deleteUser("import_user_1");
+      userService.deleteUser("import_user_3");
+    }
+  }
+
+  @Test
+  @WithMockUser
+  public void expectImportUsersShouldRejectUnchangedExistingUsers() throws Exception {
+    var jwt = jwtWithRoles("librarian", "LIBRARIAN");
+    // demo_user_3 exists exactly like this and must not be mistaken for the inserted row
+    var ndjson = """
+        {"userName":"demo_user_3","firstName":"Demo","lastName":"Drei","email":"demo3@example.test"}
+        {"userName":"import_user_4","firstName":"Import","lastName":"Four","email":"import4@example.test"}
+        """;
+    try {
+      mockMvc.perform(post("/library/api/users/import")
+              .content(ndjson)
+              .contentType(MediaType.APPLICATION_NDJSON)
+              .with(jwt)
+          )
+          .andExpect(status().isOk())
+          .andExpect(jsonPath("$.imported").value(1))
+          .andExpect(jsonPath("$.rejected").value(1))
+          .andExpect(jsonPath("$.rejectedRows[0].line").value(1))
+          .andExpect(jsonPath("$.rejectedRows[0].hints").value("username, email"));
+    } finally {
+      userService.deleteUser("import_user_4");
+    }
+  }
+
   @Test
   @WithMockUser
   @Transactional
@@ -211,6 +491,62 @@ public class UserControllerTest {
     }
   }
 
+  @Test
+  @WithMockUser
+  public void expectCreatedUserShouldBeFoundAfterNotFound() throws Exception {
+    var jwt = jwtWithRoles("librarian", "LIBRARIAN");
+    try {
+      // not found result is cached
+      mockMvc.perform(get("/library/api/users/" + NEW_USER_USERNAME).with(jwt))
+          .andExpect(status().isNotFound());
+
+      mockMvc.perform(post("/library/api/users")
+              .content(objectMapper.writeValueAsString(new UserDto(NEW_USER_USERNAME, "John", "Doe", "john.doe@example.com")))
+              .contentType(MediaType.APPLICATION_JSON)
+              .with(jwt))
+          .andExpect(status().isCreated());
+
+      mockMvc.perform(get("/library/api/users/" + NEW_USER_USERNAME).with(jwt))
+          .andExpect(status().isOk());
+    } finally {
+      mockMvc.perform(delete("/library/api/users/" + NEW_USER_USERNAME).with(jwt));
+    }
+    mockMvc.perform(get("/library/api/users/" + NEW_USER_USERNAME).with(jwt))
+        .andExpect(status().isNotFound());
+  }
+
+  @Test
+  @WithMockUser
+  public void expectUserIdsShouldBePrewarmedAndEvictedOnDelete() throws Exception {
+    // demo_user_1 is resolved from the pre-warmed cache, the hit is a saved lookup
+    double savedLookups = savedUserIdLookups();
+    mockMvc.perform(get("/library/api/users/demo_user_1/loans").with(jwtWithRoles("demo_user_1")))
+        .andExpect(status().isOk());
+    assertTrue(savedUserIdLookups() > savedLookups);
+
+    var jwt = jwtWithRoles("librarian", "LIBRARIAN");
+    try {
+      mockMvc.perform(post("/library/api/users")
+              .content(objectMapper.writeValueAsString(new UserDto(NEW_USER_USERNAME, "John", "Doe", "john.doe@example.com")))
+              .contentType(MediaType.APPLICATION_JSON)
+              .with(jwt))
+          .andExpect(status().isCreated());
+      assertTrue(userRepository.findIdByUsername(NEW_USER_USERNAME).isPresent());
+    } finally {
+      mockMvc.perform(delete("/library/api/users/" + NEW_USER_USERNAME).with(jwt));
+    }
+    assertFalse(userRepository.findIdByUsername(NEW_USER_USERNAME).isPresent());
+  }
+
+  private double savedUserIdLookups() throws Exception {
+    String metric = mockMvc.perform(get("/actuator/metrics/cache.gets")
+            .queryParam("tag", "name:userIdsByUsername", "result:hit")
+            .with(jwtWithRoles("librarian", "LIBRARIAN")))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+    return JsonPath.<Double>read(metric, "$.measurements[0].value");
+  }
+
   @Test
   @WithMockUser
   public void expectCreateUserWithAlreadyExistingUsernameShouldReturnConflict() throws Exception {
@@ -1,5 +1,11 @@
 package org.kergru.library.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Book with its loan status. Loan listings only fill isbn, title and author, unset fields are not serialized.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public record BookDto(
     String isbn,
     String title,
@@ -0,0 +1,13 @@
+package org.kergru.library.model;
+
+/**
+ * Result of a book import. Rejected records are malformed or miss a mandatory field.
+ */
+public record BookImportResultDto(
+    long imported,
+    long rejected,
+    long durationMillis,
+    long booksPerSecond
+) {
+
+}
@@ -0,0 +1,25 @@
+package org.kergru.library.model;
+
+/**
+ * Result of borrowing one isbn of a batch, loan is only set if the book has been borrowed.
+ */
+public record BorrowResultDto(
+    String isbn,
+    Status status,
+    LoanDto loan
+) {
+
+  public enum Status {
+    BORROWED,
+    ALREADY_BORROWED,
+    NOT_FOUND
+  }
+
+  public static BorrowResultDto borrowed(LoanDto loan) {
+    return new BorrowResultDto(loan.book().isbn(), Status.BORROWED, loan);
+  }
+
+  public static BorrowResultDto failed(String isbn, Status status) {
+    return new BorrowResultDto(isbn, status, null);
+  }
+}
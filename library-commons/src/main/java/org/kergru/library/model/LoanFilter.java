@@ -0,0 +1,22 @@
+package org.kergru.library.model;
+
+/**
+ * Which loans of a user are returned by the loan history.
+ */
+public enum LoanFilter {
+
+  /**
+   * Books the user has borrowed and not returned yet.
+   */
+  ACTIVE,
+
+  /**
+   * Returned loans only.
+   */
+  RETURNED,
+
+  /**
+   * Active and returned loans.
+   */
+  ALL
+}
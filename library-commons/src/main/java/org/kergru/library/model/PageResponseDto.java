@@ -4,6 +4,13 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.List;
 
+/**
+ * One page of a search result.
+ * <p>
+ * totalMode tells how the totals were determined, with {@link TotalMode#NONE} totalPages and totalElements are -1.
+ * Pages requested by cursor are never counted and don't know their number either, number is -1 there.
+ * nextCursor continues after the last element and is null on the last page.
+ */
 public record PageResponseDto<T>(
     List<T> content,
     int number,
@@ -13,7 +20,9 @@ public record PageResponseDto<T>(
     boolean first,
     boolean last,
     int numberOfElements,
-    boolean empty
+    boolean empty,
+    String nextCursor,
+    TotalMode totalMode
 ) {
   @JsonCreator
   public PageResponseDto(
@@ -25,7 +34,9 @@ public record PageResponseDto<T>(
       @JsonProperty("first") boolean first,
       @JsonProperty("last") boolean last,
       @JsonProperty("numberOfElements") int numberOfElements,
-      @JsonProperty("empty") boolean empty
+      @JsonProperty("empty") boolean empty,
+      @JsonProperty("nextCursor") String nextCursor,
+      @JsonProperty("totalMode") TotalMode totalMode
   ) {
     this.content = content;
     this.number = number;
@@ -36,5 +47,35 @@ public record PageResponseDto<T>(
     this.last = last;
     this.numberOfElements = numberOfElements;
     this.empty = empty;
+    this.nextCursor = nextCursor;
+    this.totalMode = totalMode;
+  }
+
+  public PageResponseDto(
+      List<T> content,
+      int number,
+      int size,
+      int totalPages,
+      long totalElements,
+      boolean first,
+      boolean last,
+      int numberOfElements,
+      boolean empty
+  ) {
+    this(content, number, size, totalPages, totalElements, first, last, numberOfElements, empty, null, TotalMode.EXACT);
+  }
+
+  /**
+   * Page selected by page number whose total is not counted.
+   */
+  public static <T> PageResponseDto<T> ofSlice(List<T> content, int number, int size, boolean hasNext, String nextCursor) {
+    return new PageResponseDto<>(content, number, size, -1, -1, number == 0, !hasNext, content.size(), content.isEmpty(), nextCursor, TotalMode.NONE);
+  }
+
+  /**
+   * Page of a cursor based request, without totals.
+   */
+  public static <T> PageResponseDto<T> ofCursor(List<T> content, int size, String nextCursor) {
+    return new PageResponseDto<>(content, -1, size, -1, -1, false, nextCursor == null, content.size(), content.isEmpty(), nextCursor, TotalMode.NONE);
   }
 }
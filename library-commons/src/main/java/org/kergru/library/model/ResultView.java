@@ -0,0 +1,17 @@
+package org.kergru.library.model;
+
+/**
+ * Fields returned by the book and user searches, fields not in the view are null and not serialized.
+ */
+public enum ResultView {
+
+  /**
+   * Fields shown in lists: books without publisher, pages and description, users without email.
+   */
+  SUMMARY,
+
+  /**
+   * All fields except the description, which is only returned by the lookup of a single book.
+   */
+  FULL
+}
@@ -0,0 +1,17 @@
+package org.kergru.library.model;
+
+import java.util.List;
+
+/**
+ * Loans to return at once, identified by loan id or by the isbn of the borrowed book.
+ */
+public record ReturnRequestDto(
+    List<Long> loanIds,
+    List<String> isbns
+) {
+
+  public ReturnRequestDto {
+    loanIds = loanIds == null ? List.of() : loanIds;
+    isbns = isbns == null ? List.of() : isbns;
+  }
+}
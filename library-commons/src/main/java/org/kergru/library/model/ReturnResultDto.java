@@ -0,0 +1,17 @@
+package org.kergru.library.model;
+
+/**
+ * Result of returning one item of a {@link ReturnRequestDto}, loanId and isbn are set as far as they are known.
+ */
+public record ReturnResultDto(
+    Long loanId,
+    String isbn,
+    Status status
+) {
+
+  public enum Status {
+    RETURNED,
+    NOT_BORROWED,
+    NOT_FOUND
+  }
+}
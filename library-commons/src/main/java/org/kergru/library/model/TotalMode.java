@@ -0,0 +1,22 @@
+package org.kergru.library.model;
+
+/**
+ * How totalElements and totalPages of a {@link PageResponseDto} are determined.
+ */
+public enum TotalMode {
+
+  /**
+   * Counted for every request.
+   */
+  EXACT,
+
+  /**
+   * Counted once per search string and reused until the data changes.
+   */
+  CACHED,
+
+  /**
+   * Not counted, totalElements and totalPages are -1, only last tells if there is a next page.
+   */
+  NONE
+}
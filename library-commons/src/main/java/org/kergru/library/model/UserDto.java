@@ -1,5 +1,11 @@
 package org.kergru.library.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * User profile, email is null and not serialized in the summary view of the user search.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public record UserDto(
     String userName,
     String firstName,
@@ -0,0 +1,24 @@
+package org.kergru.library.model;
+
+import java.util.List;
+
+/**
+ * Result of a user import. Rejected rows are listed with their line number and the reason,
+ * "username", "email" or "username, email" if they already exist, like the hints of a single user creation.
+ */
+public record UserImportResultDto(
+    long imported,
+    long rejected,
+    long durationMillis,
+    long rowsPerSecond,
+    List<RejectedRow> rejectedRows
+) {
+
+  public record RejectedRow(
+      long line,
+      String userName,
+      String hints
+  ) {
+
+  }
+}
@@ -0,0 +1,102 @@
+package org.kergru.library.client.librarybackend;
+
+import java.util.function.Supplier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientManager;
+import org.springframework.stereotype.Component;
+
+/**
+ * Lets calls of the {@link LibraryBackendClient} run on another thread with the access token of the current user,
+ * also after the current request has completed, e.g. background refreshes of cached responses or the concurrent
+ * calls of a page, see {@link org.kergru.library.service.FanOut}.
+ * <p>
+ * The OAuth2 client needs the current request to look up the token, so the token is resolved on the calling thread.
+ * The {@link #interceptor()} sets it as Authorization header, the OAuth2 interceptor skips requests which already have one.
+ */
+@Component
+public class BackgroundCalls {
+
+  static final String CLIENT_REGISTRATION_ID = "keycloak";
+
+  private static final ThreadLocal<String> ACCESS_TOKEN = new ThreadLocal<>();
+
+  private final OAuth2AuthorizedClientManager authorizedClientManager;
+
+  public BackgroundCalls(OAuth2AuthorizedClientManager authorizedClientManager) {
+    this.authorizedClientManager = authorizedClientManager;
+  }
+
+  /**
+   * Binds the call to the access token of the current user, the returned task can run on any thread.
+   *
+   * @throws IllegalStateException if there is no access token for the current user
+   */
+  public Runnable withCurrentUserToken(Runnable call) {
+    Supplier<Void> bound = currentUserToken().bind(() -> {
+      call.run();
+      return null;
+    });
+    return bound::get;
+  }
+
+  /**
+   * Resolves the access token of the current user once, e.g. for several calls running concurrently.
+   *
+   * @throws IllegalStateException if there is no access token for the current user
+   */
+  public AccessToken currentUserToken() {
+    var authentication = SecurityContextHolder.getContext().getAuthentication();
+    if (authentication == null) {
+      throw new IllegalStateException("No authenticated user");
+    }
+    OAuth2AuthorizedClient authorizedClient = authorizedClientManager.authorize(
+        OAuth2AuthorizeRequest.withClientRegistrationId(CLIENT_REGISTRATION_ID).principal(authentication).build());
+    if (authorizedClient == null) {
+      throw new IllegalStateException("No access token for " + authentication.getName());
+    }
+    return new AccessToken(authorizedClient.getAccessToken().getTokenValue());
+  }
+
+  /**
+   * Access token resolved on the request thread, calls bound to it send it from any thread.
+   */
+  public record AccessToken(String value) {
+
+    public <T> Supplier<T> bind(Supplier<T> call) {
+      return () -> {
+        ACCESS_TOKEN.set(value);
+        try {
+          return call.get();
+        } finally {
+          ACCESS_TOKEN.remove();
+        }
+      };
+    }
+
+    @Override
+    public String toString() {
+      return "AccessToken[***]";
+    }
+  }
+
+  /**
+   * Sets the Authorization header of calls bound by {@link #withCurrentUserToken(Runnable)}.
+   */
+  static ClientHttpRequestInterceptor interceptor() {
+    return (request, body, execution) -> {
+      String accessToken = ACCESS_TOKEN.get();
+      if (accessToken != null) {
+        request.getHeaders().setBearerAuth(accessToken);
+      }
+      return execution.execute(request, body);
+    };
+  }
+
+  static boolean hasAccessToken(HttpHeaders headers) {
+    return headers.containsKey(HttpHeaders.AUTHORIZATION);
+  }
+}
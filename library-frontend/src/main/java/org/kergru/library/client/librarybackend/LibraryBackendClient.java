@@ -5,8 +5,12 @@ import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
 import org.kergru.library.model.BookDto;
+import org.kergru.library.model.BorrowResultDto;
 import org.kergru.library.model.LoanDto;
+import org.kergru.library.model.LoanFilter;
 import org.kergru.library.model.PageResponseDto;
+import org.kergru.library.model.ResultView;
+import org.kergru.library.model.TotalMode;
 import org.kergru.library.model.UserDto;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,6 +23,8 @@ import org.springframework.web.client.RestClient;
 /**
  * OAuth2 client for the library backend.
  * Uses the token relay pattern which is set up in OAuth2RestClientConfig by adding OAuth2ClientHttpRequestInterceptor.
+ * Responses of the book endpoints carry an ETag, they are kept and revalidated with If-None-Match by the
+ * ConditionalGetInterceptor, the backend answers 304 as long as the catalog hasn't changed.
  *
  * @see OAuth2RestClientConfig
  */
@@ -34,19 +40,29 @@ public class LibraryBackendClient {
   }
 
   /**
-   * Searches books from backend using pagination.
+   * Searches books from backend using pagination, by page number or after the cursor (nextCursor) of a previous page.
+   * total selects how the backend determines the totals, null for the backend default (exact count).
+   * Books are requested in the summary view, without publisher, pages and description, which the list doesn't show.
    */
-  public PageResponseDto<BookDto> searchBooks(String searchString, int page, int size, String sortBy) {
+  public PageResponseDto<BookDto> searchBooks(
+      String searchString, int page, int size, String sortBy, String cursor, TotalMode total) {
     return restClient.get()
         .uri(uriBuilder -> {
           var builder = uriBuilder
               .path("/library/api/books")
               .queryParam("page", page)
               .queryParam("size", size)
-              .queryParam("sort", sortBy);
+              .queryParam("sort", sortBy)
+              .queryParam("view", ResultView.SUMMARY);
           if (searchString != null && !searchString.isEmpty()) {
             builder.queryParam("searchString", searchString);
           }
+          if (cursor != null) {
+            builder.queryParam("cursor", cursor);
+          }
+          if (total != null) {
+            builder.queryParam("total", total);
+          }
           return builder.build();
         })
         .retrieve()
@@ -69,9 +85,9 @@ public class LibraryBackendClient {
   }
 
   /**
-   * Searches users from backend using pagination.
+   * Searches users from backend using pagination, by page number or after the cursor (nextCursor) of a previous page.
    */
-  public PageResponseDto<UserDto> searchUsers(String searchString, int page, int size, String sortBy) {
+  public PageResponseDto<UserDto> searchUsers(String searchString, int page, int size, String sortBy, String cursor) {
     return restClient.get()
         .uri(uriBuilder -> {
           var builder = uriBuilder
@@ -82,6 +98,9 @@ public class LibraryBackendClient {
           if (searchString != null && !searchString.isEmpty()) {
             builder.queryParam("searchString", searchString);
           }
+          if (cursor != null) {
+            builder.queryParam("cursor", cursor);
+          }
           return builder.build();
         })
         .retrieve()
@@ -104,11 +123,16 @@ public class LibraryBackendClient {
   }
 
   /**
-   * Retrieves borrowed books of user from backend.
+   * Retrieves one page of the loan history of a user from backend, newest loans first.
    */
-  public List<LoanDto> getBorrowedBooksOfUser(String userName) {
+  public PageResponseDto<LoanDto> getLoanHistory(String userName, LoanFilter status, int page, int size) {
     return restClient.get()
-        .uri("/library/api/users/{userName}/loans", userName)
+        .uri(uriBuilder -> uriBuilder
+            .path("/library/api/users/{userName}/loans/history")
+            .queryParam("status", status)
+            .queryParam("page", page)
+            .queryParam("size", size)
+            .build(userName))
         .retrieve()
         .body(new ParameterizedTypeReference<>() {});
   }
@@ -161,6 +185,17 @@ public class LibraryBackendClient {
     }
   }
 
+  /**
+   * Borrows several books to a user with one request. Endpoint is only available for the user himself.
+   */
+  public List<BorrowResultDto> borrowBooks(List<String> isbns, String userName) {
+    return restClient.post()
+        .uri("/library/api/users/{userName}/loans/batch", userName)
+        .body(isbns)
+        .retrieve()
+        .body(new ParameterizedTypeReference<>() {});
+  }
+
   /**
    * Returns a book to library. Endpoint is only available for the user himself.
    */
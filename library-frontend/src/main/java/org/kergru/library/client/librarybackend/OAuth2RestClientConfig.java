@@ -1,18 +1,33 @@
 package org.kergru.library.client.librarybackend;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.kergru.library.client.librarybackend.cache.ConditionalGetInterceptor;
 import org.kergru.library.client.librarybackend.logging.LoggingInterceptor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.http.client.BufferingClientHttpRequestFactory;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.security.oauth2.client.OAuth2AuthorizedClientManager;
 import org.springframework.security.oauth2.client.web.client.OAuth2ClientHttpRequestInterceptor;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.client.RestClient;
 
 /**
  * Configuration for OAuth2 RestClient
  * Defines a RestClient bean with OAuth2 authentication interceptor and logging interceptor.
+ * <p>
+ * Connections to the backend are kept alive and reused, response bodies are streamed to the message converters
+ * instead of being buffered. Responses with ETag are kept and revalidated, see {@link ConditionalGetInterceptor}.
  */
 @Configuration
 public class OAuth2RestClientConfig {
@@ -20,18 +35,64 @@ public class OAuth2RestClientConfig {
   @Bean
   public RestClient oauth2RestClient (
       OAuth2AuthorizedClientManager authorizedClientManager,
-      @Value("${library.backend.baseUrl}") String backendBaseUrl){
+      @Value("${library.backend.baseUrl}") String backendBaseUrl,
+      @Value("${library.backend.http.version:http-1-1}") HttpClient.Version version,
+      @Value("${library.backend.http.connect-timeout:2s}") Duration connectTimeout,
+      @Value("${library.backend.http.read-timeout:10s}") Duration readTimeout,
+      @Value("${library.backend.http.pool.max-connections:50}") int maxConnections,
+      @Value("${library.backend.http.pool.keep-alive:30s}") Duration keepAlive,
+      @Value("${library.backend.cache.max-size:10MB}") DataSize cacheMaxSize){
 
     // OAuth2 token interceptor
     OAuth2ClientHttpRequestInterceptor oauth2Interceptor =
         new OAuth2ClientHttpRequestInterceptor(authorizedClientManager);
-    oauth2Interceptor.setClientRegistrationIdResolver(request -> "keycloak");
+    oauth2Interceptor.setClientRegistrationIdResolver(request ->
+        BackgroundCalls.hasAccessToken(request.getHeaders()) ? null : BackgroundCalls.CLIENT_REGISTRATION_ID);
 
     return RestClient.builder()
         .baseUrl(backendBaseUrl)
-        .requestFactory(new BufferingClientHttpRequestFactory(new SimpleClientHttpRequestFactory()))
+        .requestFactory(requestFactory(version, connectTimeout, readTimeout, maxConnections, keepAlive))
+        .requestInterceptor(BackgroundCalls.interceptor()) //append bearer token of background calls
         .requestInterceptor(oauth2Interceptor) //append bearer token with interceptor
+        .requestInterceptor(new ConditionalGetInterceptor(cacheMaxSize.toBytes())) //revalidate kept responses with If-None-Match
         .requestInterceptor(new LoggingInterceptor()) //log request and response
         .build();
   }
-}
\ No newline at end of file
+
+  /**
+   * HTTP_1_1 uses a pool of at most maxConnections connections (Apache HttpClient), idle connections are closed after keepAlive.
+   * HTTP_2 uses the JDK HttpClient, which upgrades the plain http connection to h2c and multiplexes all requests over it,
+   * the backend has to enable server.http2.
+   */
+  static ClientHttpRequestFactory requestFactory(
+      HttpClient.Version version, Duration connectTimeout, Duration readTimeout, int maxConnections, Duration keepAlive) {
+
+    if (version == HttpClient.Version.HTTP_2) {
+      HttpClient httpClient = HttpClient.newBuilder()
+          .version(HttpClient.Version.HTTP_2)
+          .connectTimeout(connectTimeout)
+          .build();
+      JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+      requestFactory.setReadTimeout(readTimeout);
+      return requestFactory;
+    }
+
+    PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+        .setMaxConnTotal(maxConnections)
+        .setMaxConnPerRoute(maxConnections) // all requests go to the backend
+        .setDefaultConnectionConfig(ConnectionConfig.custom()
+            .setConnectTimeout(Timeout.ofMilliseconds(connectTimeout.toMillis()))
+            .setSocketTimeout(Timeout.ofMilliseconds(readTimeout.toMillis()))
+            .build())
+        .build();
+    HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(HttpClients.custom()
+        .setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(RequestConfig.custom()
+            .setConnectionKeepAlive(TimeValue.ofMilliseconds(keepAlive.toMillis()))
+            .build())
+        .evictIdleConnections(TimeValue.ofMilliseconds(keepAlive.toMillis()))
+        .build());
+    requestFactory.setReadTimeout(readTimeout);
+    return requestFactory;
+  }
+}
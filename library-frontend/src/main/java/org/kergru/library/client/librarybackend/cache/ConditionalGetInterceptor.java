@@ -0,0 +1,112 @@
+package org.kergru.library.client.librarybackend.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * Keeps GET responses of the backend which carry an ETag and revalidates them with If-None-Match.
+ * On 304 the kept response is returned, so the backend neither builds nor sends the body again.
+ * <p>
+ * Responses are kept by URI only, not by user, and returned to every user asking for the same URI. This is only safe
+ * for bodies which are the same for all users, so only the book endpoints are handled, see {@link #SHARED_PATH}.
+ * Every request is still sent to the backend with the token of the user, which authorizes it before answering 304.
+ * Only responses with ETag are read into memory, all others are streamed as before.
+ */
+public class ConditionalGetInterceptor implements ClientHttpRequestInterceptor {
+
+  /**
+   * Book searches and book details, their bodies don't depend on the user. Endpoints with user dependent bodies
+   * (e.g. /users/{userName}/loans) must not be added, even if they get an ETag.
+   */
+  static final String SHARED_PATH = "/library/api/books";
+
+  private final Cache<String, CachedResponse> responses;
+
+  public ConditionalGetInterceptor(long maximumBytes) {
+    this.responses = Caffeine.newBuilder()
+        .maximumWeight(maximumBytes)
+        .weigher((String uri, CachedResponse response) -> uri.length() + response.body().length)
+        .build();
+  }
+
+  @Override
+  public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+    if (request.getMethod() != HttpMethod.GET || !isShared(request.getURI().getPath())) {
+      return execution.execute(request, body);
+    }
+
+    String key = request.getURI().toString();
+    CachedResponse cached = responses.getIfPresent(key);
+    if (cached != null) {
+      request.getHeaders().setIfNoneMatch(cached.eTag());
+    }
+
+    ClientHttpResponse response = execution.execute(request, body);
+    if (cached != null && response.getStatusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED)) {
+      response.close();
+      return cached.toResponse();
+    }
+
+    String eTag = response.getHeaders().getETag();
+    if (!response.getStatusCode().isSameCodeAs(HttpStatus.OK) || eTag == null) {
+      if (cached != null) {
+        responses.invalidate(key);
+      }
+      return response;
+    }
+    try (response) {
+      HttpHeaders headers = new HttpHeaders();
+      headers.putAll(response.getHeaders());
+      CachedResponse fresh = new CachedResponse(eTag, HttpHeaders.readOnlyHttpHeaders(headers), response.getBody().readAllBytes());
+      responses.put(key, fresh);
+      return fresh.toResponse();
+    }
+  }
+
+  private static boolean isShared(String path) {
+    return path != null && (path.equals(SHARED_PATH) || path.startsWith(SHARED_PATH + "/"));
+  }
+
+  private record CachedResponse(String eTag, HttpHeaders headers, byte[] body) {
+
+    ClientHttpResponse toResponse() {
+      return new ClientHttpResponse() {
+
+        @Override
+        public HttpStatusCode getStatusCode() {
+          return HttpStatus.OK;
+        }
+
+        @Override
+        public String getStatusText() {
+          return HttpStatus.OK.getReasonPhrase();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+          return headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+          return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public void close() {
+        }
+      };
+    }
+  }
+}
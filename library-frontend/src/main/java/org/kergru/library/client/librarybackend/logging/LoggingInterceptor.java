@@ -1,5 +1,8 @@
 package org.kergru.library.client.librarybackend.logging;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpRequest;
 import org.springframework.http.client.ClientHttpRequestExecution;
 import org.springframework.http.client.ClientHttpRequestInterceptor;
@@ -7,14 +10,25 @@ import org.springframework.http.client.ClientHttpResponse;
 
 import java.io.IOException;
 
+/**
+ * Logs requests to and responses from the backend at debug level.
+ * Only status and headers are logged, the response body is not read, so it can still be streamed to the caller.
+ * The Authorization header is masked.
+ */
 public class LoggingInterceptor implements ClientHttpRequestInterceptor {
 
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
   @Override
   public ClientHttpResponse intercept(
       HttpRequest request,
       byte[] body,
       ClientHttpRequestExecution execution) throws IOException {
 
+    if (!logger.isDebugEnabled()) {
+      return execution.execute(request, body);
+    }
+
     logRequest(request);
 
     ClientHttpResponse response = execution.execute(request, body);
@@ -25,15 +39,15 @@ public class LoggingInterceptor implements ClientHttpRequestInterceptor {
   }
 
   private void logRequest(HttpRequest request) {
-    System.out.println("=== LibraryBackendClient: Outgoing Request ===");
-    System.out.println("URI: " + request.getURI());
-    System.out.println("Method: " + request.getMethod());
-    System.out.println("Headers: " + request.getHeaders());
+    HttpHeaders headers = new HttpHeaders();
+    headers.putAll(request.getHeaders());
+    if (headers.containsKey(HttpHeaders.AUTHORIZATION)) {
+      headers.set(HttpHeaders.AUTHORIZATION, "***");
+    }
+    logger.debug("LibraryBackendClient: Outgoing Request {} {} headers={}", request.getMethod(), request.getURI(), headers);
   }
 
   private void logResponse(ClientHttpResponse response) throws IOException {
-    System.out.println("=== LibraryBackendClient: Incoming Response ===");
-    System.out.println("Status: " + response.getStatusCode());
-    System.out.println("Headers: " + response.getHeaders());
+    logger.debug("LibraryBackendClient: Incoming Response {} headers={}", response.getStatusCode(), response.getHeaders());
   }
-}
\ No newline at end of file
+}
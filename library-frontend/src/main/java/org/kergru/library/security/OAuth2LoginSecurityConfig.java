@@ -41,7 +41,8 @@ public class OAuth2LoginSecurityConfig {
     //browser-to-service communication with session cookie, csrf per default enabled
     http
         .authorizeHttpRequests(authorize -> authorize
-            .requestMatchers("/", "/login", "/public/**").permitAll()
+            .requestMatchers("/", "/login", "/public/**", "/actuator/health", "/actuator/health/**").permitAll()
+            .requestMatchers("/actuator/**").hasAuthority("ROLE_LIBRARIAN") // metrics, e.g. of the book caches
             .requestMatchers("/library/ui/admin/**").hasAuthority("ROLE_LIBRARIAN")
             .requestMatchers("/library/rest/admin/**").hasAuthority("ROLE_LIBRARIAN")
             .anyRequest().authenticated()
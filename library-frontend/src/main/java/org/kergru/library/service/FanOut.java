@@ -0,0 +1,126 @@
+package org.kergru.library.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.kergru.library.client.librarybackend.BackgroundCalls;
+import org.kergru.library.client.librarybackend.BackgroundCalls.AccessToken;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Runs independent backend calls of a page concurrently, each on its own virtual thread.
+ * <p>
+ * The forks don't see the request or the security context of the calling thread, the servlet request and the session
+ * must not be used by several threads. Instead the access token of the user is resolved once when the scope is opened
+ * and sent by every fork, the OAuth2 interceptor skips requests carrying it, see {@link BackgroundCalls}.
+ * All forks of a {@link Scope} share one deadline, if a fork fails or the deadline passes, the other forks are cancelled.
+ */
+@Component
+public class FanOut {
+
+  private final BackgroundCalls backgroundCalls;
+
+  private final Duration timeout;
+
+  public FanOut(BackgroundCalls backgroundCalls, @Value("${library.fan-out.timeout:5s}") Duration timeout) {
+    this.backgroundCalls = backgroundCalls;
+    this.timeout = timeout;
+  }
+
+  /**
+   * Opens a scope whose deadline is the configured timeout from now, to be used with try-with-resources.
+   *
+   * @throws IllegalStateException if there is no access token for the current user
+   */
+  public Scope open() {
+    return new Scope(backgroundCalls.currentUserToken(), timeout);
+  }
+
+  public static final class Scope implements AutoCloseable {
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("fan-out-", 0).factory());
+
+    // completes the forks in the order they finish, so a failure is noticed while others are still running
+    private final CompletionService<Object> completions = new ExecutorCompletionService<>(executor);
+
+    private final List<Future<?>> forks = new ArrayList<>();
+
+    private final AccessToken accessToken;
+
+    private final Duration timeout;
+
+    private final long deadline;
+
+    Scope(AccessToken accessToken, Duration timeout) {
+      this.accessToken = accessToken;
+      this.timeout = timeout;
+      this.deadline = System.nanoTime() + timeout.toNanos();
+    }
+
+    /**
+     * Starts the call on a new virtual thread, the returned supplier yields its result after {@link #join()}.
+     */
+    public <T> Supplier<T> fork(Supplier<T> call) {
+      Supplier<T> bound = accessToken.bind(call);
+      Future<Object> fork = completions.submit(bound::get);
+      forks.add(fork);
+      @SuppressWarnings("unchecked")
+      Supplier<T> result = () -> (T) fork.resultNow();
+      return result;
+    }
+
+    /**
+     * Waits until all forks have completed.
+     *
+     * @throws RuntimeException the exception of the first failed fork, the other forks are cancelled
+     * @throws ResourceAccessException if the deadline passes first, all forks are cancelled
+     */
+    public void join() {
+      try {
+        for (int i = 0; i < forks.size(); i++) {
+          Future<Object> completed = completions.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+          if (completed == null) {
+            cancelAll();
+            throw new ResourceAccessException("Backend calls did not complete within " + timeout);
+          }
+          completed.get();
+        }
+      } catch (ExecutionException e) {
+        cancelAll();
+        if (e.getCause() instanceof RuntimeException cause) {
+          throw cause;
+        }
+        throw new IllegalStateException(e.getCause());
+      } catch (InterruptedException e) {
+        cancelAll();
+        Thread.currentThread().interrupt();
+        throw new ResourceAccessException("Interrupted while waiting for backend calls");
+      }
+    }
+
+    /**
+     * Cancels the forks still running without waiting for them, they only hold the access token. A fork blocked
+     * in a socket read which doesn't react to the interrupt ends with the read timeout of the backend client.
+     */
+    @Override
+    public void close() {
+      cancelAll();
+      executor.shutdownNow();
+    }
+
+    private void cancelAll() {
+      forks.forEach(fork -> fork.cancel(true));
+    }
+  }
+}
@@ -1,57 +1,137 @@
 // java
 package org.kergru.library.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.function.Supplier;
 import org.kergru.library.client.keycloak.KeycloakAdminClient;
+import org.kergru.library.client.librarybackend.BackgroundCalls;
 import org.kergru.library.client.librarybackend.LibraryBackendClient;
 import org.kergru.library.model.BookDto;
+import org.kergru.library.model.BorrowResultDto;
 import org.kergru.library.model.LoanDto;
+import org.kergru.library.model.LoanFilter;
 import org.kergru.library.model.PageResponseDto;
+import org.kergru.library.model.TotalMode;
 import org.kergru.library.model.UserDto;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.HttpClientErrorException;
 
 @Service
 public class LibraryService {
 
+  private static final int ACTIVE_LOANS_PAGE_SIZE = 100;
+
+  private static final int HISTORY_PAGE_SIZE = 10;
+
   private final LibraryBackendClient backendClient;
 
   private final KeycloakAdminClient keycloakAdminClient;
 
+  private final FanOut fanOut;
+
+  private final StaleWhileRevalidateCache<BookSearch, PageResponseDto<BookDto>> bookSearchCache;
+
+  private final StaleWhileRevalidateCache<String, Optional<BookDto>> bookCache;
+
   public LibraryService(
       LibraryBackendClient oauth2BackendClient,
-      KeycloakAdminClient keycloakAdminClient
+      KeycloakAdminClient keycloakAdminClient,
+      BackgroundCalls backgroundCalls,
+      FanOut fanOut,
+      MeterRegistry meterRegistry,
+      @Value("${library.cache.books.ttl:30s}") Duration ttl,
+      @Value("${library.cache.books.max-stale:5m}") Duration maxStale,
+      @Value("${library.cache.books.max-size:1000}") long maxSize
   ) {
     this.backendClient = oauth2BackendClient;
     this.keycloakAdminClient = keycloakAdminClient;
+    this.fanOut = fanOut;
+    this.bookSearchCache = new StaleWhileRevalidateCache<>(
+        "bookSearches", ttl, maxStale, maxSize, backgroundCalls::withCurrentUserToken, meterRegistry);
+    this.bookCache = new StaleWhileRevalidateCache<>(
+        "books", ttl, maxStale, maxSize, backgroundCalls::withCurrentUserToken, meterRegistry);
   }
 
   /**
-   * Retrieves books from the backend with pagination.
+   * Retrieves books from the backend with pagination, cursor is null for page number based paging.
+   * Results are cached by the normalized search string and the paging parameters, see {@link StaleWhileRevalidateCache}.
+   * The backend gets the search string as entered, only trimmed.
    */
-  public PageResponseDto<BookDto> searchBooks(String searchString, int page, int size, String sortBy) {
-    return backendClient.searchBooks(searchString,page, size, sortBy);
+  public PageResponseDto<BookDto> searchBooks(
+      String searchString, int page, int size, String sortBy, String cursor, TotalMode total) {
+    String trimmed = StringUtils.hasText(searchString) ? searchString.trim() : null;
+    BookSearch search = new BookSearch(normalize(trimmed), page, size, sortBy, cursor, total);
+    return bookSearchCache.get(search, () -> backendClient.searchBooks(trimmed, page, size, sortBy, cursor, total));
   }
 
   /**
-   * Retrieves a single book by its ISBN from the backend.
+   * Retrieves a single book by its ISBN from the backend, cached like the search results.
    */
   public Optional<BookDto> getBookByIsbn(String isbn) {
-    return backendClient.getBookByIsbn(isbn);
+    return bookCache.get(isbn, () -> backendClient.getBookByIsbn(isbn));
   }
 
   /**
-   * Retrieves all users from the backend with pagination.
+   * Cache key of a search string. The backend search ignores case, so searches differing only in case share
+   * their cache entries. Whitespace inside is kept, the SQL search matches it as part of the substring.
    */
-  public PageResponseDto<UserDto> searchUsers(String searchString, int page, int size, String sortBy) {
-    return backendClient.searchUsers(searchString,page, size, sortBy);
+  static String normalize(String searchString) {
+    if (searchString == null) {
+      return null;
+    }
+    String normalized = searchString.trim().toLowerCase(Locale.ROOT);
+    return normalized.isEmpty() ? null : normalized;
   }
 
   /**
-   * Retrieves a single user by userName with his loans.
+   * Retrieves all users from the backend with pagination, cursor is null for page number based paging.
+   */
+  public PageResponseDto<UserDto> searchUsers(String searchString, int page, int size, String sortBy, String cursor) {
+    return backendClient.searchUsers(searchString,page, size, sortBy, cursor);
+  }
+
+  /**
+   * Retrieves a single user by userName with his active loans.
    */
   public Optional<UserWithLoans> getUserWithLoans(String userName) {
-    return getUser(userName).map(user -> new UserWithLoans(user, getBorrowedBooksOfUser(userName)));
+    return getUserWithLoans(userName, null);
+  }
+
+  /**
+   * Retrieves a single user by userName with his active loans and, if historyPage is not null,
+   * the requested page of his returned loans. The user and his loans are retrieved concurrently, see {@link FanOut}.
+   */
+  public Optional<UserWithLoans> getUserWithLoans(String userName, Integer historyPage) {
+    try (FanOut.Scope scope = fanOut.open()) {
+      Supplier<Optional<UserDto>> user = scope.fork(() -> getUser(userName));
+      Supplier<Optional<List<LoanDto>>> activeLoans = scope.fork(() -> ofUser(() -> getActiveLoansOfUser(userName)));
+      Supplier<Optional<PageResponseDto<LoanDto>>> history = historyPage == null
+          ? Optional::empty
+          : scope.fork(() -> ofUser(() -> getLoanHistory(userName, historyPage)));
+      scope.join();
+      return user.get().map(u -> new UserWithLoans(
+          u,
+          activeLoans.get().orElse(List.of()),
+          history.get().orElse(null)));
+    }
+  }
+
+  /**
+   * The loans of an unknown user are not found, which must not fail the fan-out before the user is known to be missing.
+   */
+  private static <T> Optional<T> ofUser(Supplier<T> loansCall) {
+    try {
+      return Optional.of(loansCall.get());
+    } catch (HttpClientErrorException.NotFound e) {
+      return Optional.empty();
+    }
   }
 
   /**
@@ -62,24 +142,71 @@ public class LibraryService {
   }
 
   /**
-   * Retrieves borrowed books by user. Endpoint is only available for librarians or the user himself.
+   * Retrieves the books a user has currently borrowed. Endpoint is only available for librarians or the user himself.
    */
-  public List<LoanDto> getBorrowedBooksOfUser(String userName) {
-    return backendClient.getBorrowedBooksOfUser(userName);
+  public List<LoanDto> getActiveLoansOfUser(String userName) {
+    List<LoanDto> loans = new ArrayList<>();
+    PageResponseDto<LoanDto> page;
+    int number = 0;
+    do {
+      page = backendClient.getLoanHistory(userName, LoanFilter.ACTIVE, number++, ACTIVE_LOANS_PAGE_SIZE);
+      loans.addAll(page.content());
+    } while (!page.last());
+    return loans;
+  }
+
+  /**
+   * Retrieves one page of the returned loans of a user, newest first.
+   * Endpoint is only available for librarians or the user himself.
+   */
+  public PageResponseDto<LoanDto> getLoanHistory(String userName, int page) {
+    return backendClient.getLoanHistory(userName, LoanFilter.RETURNED, page, HISTORY_PAGE_SIZE);
   }
 
   /**
    * Borrows a book to a user. Endpoint is only available for the user himself.
    */
   public LoanDto borrowBook(String isbn, String userName) {
-    return backendClient.borrowBook(isbn, userName);
+    try {
+      return backendClient.borrowBook(isbn, userName);
+    } finally {
+      loanStatusChanged(List.of(isbn));
+    }
+  }
+
+  /**
+   * Borrows several books to a user with one request. Endpoint is only available for the user himself.
+   */
+  public List<BorrowResultDto> borrowBooks(List<String> isbns, String userName) {
+    try {
+      return backendClient.borrowBooks(isbns, userName);
+    } finally {
+      loanStatusChanged(isbns);
+    }
   }
 
   /**
    * Returns a book to library. Endpoint is only available for the user himself.
    */
   public void returnBook(Long loanId, String userName) {
-    backendClient.returnBook(loanId, userName);
+    try {
+      backendClient.returnBook(loanId, userName);
+    } finally {
+      loanStatusChanged(null);
+    }
+  }
+
+  /**
+   * Invalidates the cached books with the isbns (all books if null) and all search results, they show the loan status.
+   * Also done if the call failed, a conflict means the cached loan status is outdated.
+   */
+  private void loanStatusChanged(List<String> isbns) {
+    if (isbns == null) {
+      bookCache.invalidateAll();
+    } else {
+      isbns.forEach(bookCache::invalidate);
+    }
+    bookSearchCache.invalidateAll();
   }
 
   /**
@@ -101,4 +228,8 @@ public class LibraryService {
 
     return user;
   }
+
+  private record BookSearch(String searchString, int page, int size, String sortBy, String cursor, TotalMode total) {
+
+  }
 }
@@ -0,0 +1,131 @@
+package org.kergru.library.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded cache of backend responses, entries up to ttl old are served as they are.
+ * Older entries, up to maxStale, are served stale and reloaded in the background, so a slow backend delays the refresh,
+ * not the user. Entries older than maxStale are evicted and loaded on the calling thread again.
+ * <p>
+ * Metrics, tagged with cache = name: cache.gets (result = hit | miss), cache.size and cache.evictions,
+ * library.cache.stale counts the stale entries served, library.cache.refresh the background refreshes by outcome.
+ */
+class StaleWhileRevalidateCache<K, V> {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final String name;
+
+  private final long ttlNanos;
+
+  private final Cache<K, Entry<V>> entries;
+
+  // a refresh per key at a time
+  private final Set<K> refreshing = ConcurrentHashMap.newKeySet();
+
+  // incremented by every invalidation, loads started before are not stored
+  private final AtomicLong invalidations = new AtomicLong();
+
+  private final UnaryOperator<Runnable> backgroundContext;
+
+  private final Counter staleCounter;
+
+  private final Counter refreshSuccess;
+
+  private final Counter refreshFailure;
+
+  /**
+   * backgroundContext binds a refresh to the context of the calling thread (e.g. its access token), as it may
+   * run after the request has completed.
+   */
+  StaleWhileRevalidateCache(
+      String name, Duration ttl, Duration maxStale, long maximumSize,
+      UnaryOperator<Runnable> backgroundContext, MeterRegistry meterRegistry) {
+    this.name = name;
+    this.ttlNanos = ttl.toNanos();
+    this.backgroundContext = backgroundContext;
+    this.entries = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(maxStale)
+        .recordStats()
+        .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, entries, name);
+    this.staleCounter = Counter.builder("library.cache.stale").tag("cache", name).register(meterRegistry);
+    this.refreshSuccess = Counter.builder("library.cache.refresh").tag("cache", name).tag("outcome", "success").register(meterRegistry);
+    this.refreshFailure = Counter.builder("library.cache.refresh").tag("cache", name).tag("outcome", "failure").register(meterRegistry);
+  }
+
+  V get(K key, Supplier<V> loader) {
+    Entry<V> entry = entries.getIfPresent(key);
+    if (entry == null) {
+      long invalidation = invalidations.get();
+      V value = loader.get();
+      store(key, value, invalidation);
+      return value;
+    }
+    if (System.nanoTime() - entry.loadedAt() > ttlNanos) {
+      staleCounter.increment();
+      refresh(key, loader);
+    }
+    return entry.value();
+  }
+
+  void invalidate(K key) {
+    invalidations.incrementAndGet();
+    entries.invalidate(key);
+  }
+
+  void invalidateAll() {
+    invalidations.incrementAndGet();
+    entries.invalidateAll();
+  }
+
+  private void refresh(K key, Supplier<V> loader) {
+    if (!refreshing.add(key)) {
+      return;
+    }
+    try {
+      long invalidation = invalidations.get();
+      Runnable reload = backgroundContext.apply(() -> {
+        try {
+          store(key, loader.get(), invalidation);
+          refreshSuccess.increment();
+        } catch (RuntimeException e) {
+          refreshFailure.increment();
+          logger.warn("Failed to refresh {} entry {}, serving the stale entry: {}", name, key, e.getMessage());
+        } finally {
+          refreshing.remove(key);
+        }
+      });
+      Thread.ofVirtual().name(name + "-refresh").start(reload);
+    } catch (RuntimeException e) {
+      refreshing.remove(key);
+      refreshFailure.increment();
+      logger.warn("Failed to start refresh of {} entry {}: {}", name, key, e.getMessage());
+    }
+  }
+
+  /**
+   * Stores the value unless the cache has been invalidated since the load started, the value may be outdated then.
+   */
+  private void store(K key, V value, long invalidation) {
+    entries.asMap().compute(key, (k, current) ->
+        invalidations.get() == invalidation ? new Entry<>(value, System.nanoTime()) : current);
+  }
+
+  private record Entry<V>(V value, long loadedAt) {
+
+  }
+}
@@ -2,8 +2,15 @@ package org.kergru.library.service;
 
 import java.util.List;
 import org.kergru.library.model.LoanDto;
+import org.kergru.library.model.PageResponseDto;
 import org.kergru.library.model.UserDto;
 
-public record UserWithLoans(UserDto user, List<LoanDto> loans) {
+/**
+ * User with his active loans, history is a page of his returned loans and null as long as it hasn't been requested.
+ */
+public record UserWithLoans(UserDto user, List<LoanDto> loans, PageResponseDto<LoanDto> history) {
 
+  public UserWithLoans(UserDto user, List<LoanDto> loans) {
+    this(user, loans, null);
+  }
 }
@@ -24,16 +24,21 @@ public class LibraryAdminController {
       @RequestParam(required = false) String searchString,
       @RequestParam(defaultValue = "0") int page,
       @RequestParam(defaultValue = "10") int size,
-      @RequestParam(defaultValue = "firstName") String sortBy
+      @RequestParam(defaultValue = "firstName") String sortBy,
+      @RequestParam(required = false) String cursor
   ) {
-    model.addAttribute("usersPage", libraryService.searchUsers(searchString, page, size, sortBy));
+    model.addAttribute("usersPage", libraryService.searchUsers(searchString, page, size, sortBy, cursor));
     return "users/list";
   }
 
   @GetMapping("/users/{userName}")
-  public String getUser(@PathVariable String userName, Model model) {
+  public String getUser(
+      @PathVariable String userName,
+      @RequestParam(required = false) Integer historyPage,
+      Model model
+  ) {
 
-    var userDto = libraryService.getUserWithLoans(userName);
+    var userDto = libraryService.getUserWithLoans(userName, historyPage);
     if (userDto.isPresent()) {
       model.addAttribute("userWithLoans", userDto.get());
       return "users/detail";
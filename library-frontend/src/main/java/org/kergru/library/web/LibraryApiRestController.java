@@ -1,8 +1,10 @@
 package org.kergru.library.web;
 
+import java.util.List;
 import java.util.Map;
 import org.kergru.library.client.librarybackend.LibraryBackendClient.BookAlreadyBorrowedException;
 import org.kergru.library.client.librarybackend.LibraryBackendClient.UserAlreadyExistsException;
+import org.kergru.library.model.BorrowResultDto;
 import org.kergru.library.model.LoanDto;
 import org.kergru.library.service.LibraryService;
 import org.springframework.http.HttpStatus;
@@ -35,6 +37,11 @@ public class LibraryApiRestController {
     }
   }
 
+  @PostMapping("/me/borrowBooks")
+  public ResponseEntity<List<BorrowResultDto>> borrowBooks(@RequestBody List<String> isbns, @AuthenticationPrincipal OidcUser user) {
+    return ResponseEntity.ok(libraryService.borrowBooks(isbns, user.getPreferredUsername()));
+  }
+
   @PostMapping("/me/returnBook/{loanId}")
   public ResponseEntity<Void> returnBook(@PathVariable Long loanId, @AuthenticationPrincipal OidcUser user) {
 
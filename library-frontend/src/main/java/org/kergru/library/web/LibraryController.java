@@ -1,5 +1,6 @@
 package org.kergru.library.web;
 
+import org.kergru.library.model.TotalMode;
 import org.kergru.library.service.LibraryService;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.core.oidc.user.OidcUser;
@@ -31,9 +32,13 @@ public class LibraryController {
   }
 
   @GetMapping("/me")
-  public String me(Model model, @AuthenticationPrincipal OidcUser user) {
+  public String me(
+      Model model,
+      @AuthenticationPrincipal OidcUser user,
+      @RequestParam(required = false) Integer historyPage
+  ) {
 
-    var userDto = libraryService.getUserWithLoans(user.getPreferredUsername());
+    var userDto = libraryService.getUserWithLoans(user.getPreferredUsername(), historyPage);
     if (userDto.isPresent()) {
       model.addAttribute("userWithLoans", userDto.get());
       return "users/detail";
@@ -49,9 +54,10 @@ public class LibraryController {
       @RequestParam(required = false) String searchString,
       @RequestParam(defaultValue = "0") int page,
       @RequestParam(defaultValue = "5") int size,
-      @RequestParam(defaultValue = "title") String sortBy
+      @RequestParam(defaultValue = "title") String sortBy,
+      @RequestParam(required = false) String cursor
   ) {
-    model.addAttribute("booksPage", libraryService.searchBooks(searchString, page, size, sortBy));
+    model.addAttribute("booksPage", libraryService.searchBooks(searchString, page, size, sortBy, cursor, TotalMode.CACHED));
     return ("books/list");
   }
 
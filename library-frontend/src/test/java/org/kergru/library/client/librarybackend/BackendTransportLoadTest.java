@@ -0,0 +1,122 @@
+package org.kergru.library.client.librarybackend;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.okJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.BufferingClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
+
+/**
+ * Load test of the backend transport against a local stub returning a page of books:
+ * the former buffered HttpURLConnection transport against the pooled HTTP/1.1 and the h2c transport.
+ * The stub answers after a fixed delay, so the clients don't saturate the CPU and the latencies show the transport.
+ */
+class BackendTransportLoadTest {
+
+  private static final int CLIENTS = 8;
+
+  private static final int REQUESTS_PER_CLIENT = 250;
+
+  private static final int BACKEND_DELAY_MILLIS = 10;
+
+  private WireMockServer backendStub;
+
+  private String baseUrl;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    backendStub = new WireMockServer(options().dynamicPort().containerThreads(2 * CLIENTS).disableRequestJournal());
+    backendStub.stubFor(get(urlPathEqualTo("/library/api/books"))
+        .willReturn(okJson(page()).withFixedDelay(BACKEND_DELAY_MILLIS)));
+    backendStub.start();
+    baseUrl = backendStub.baseUrl();
+  }
+
+  @AfterEach
+  void tearDown() {
+    backendStub.stop();
+  }
+
+  @Test
+  void expectPooledTransportLatencies() throws Exception {
+    long[] buffered = run(new BufferingClientHttpRequestFactory(new SimpleClientHttpRequestFactory()));
+    long[] pooled = run(requestFactory(HttpClient.Version.HTTP_1_1));
+    long[] h2c = run(requestFactory(HttpClient.Version.HTTP_2));
+
+    System.out.printf("backend transport, %d clients x %d requests: buffered HttpURLConnection %s, pooled %s, h2c %s%n",
+        CLIENTS, REQUESTS_PER_CLIENT, percentiles(buffered), percentiles(pooled), percentiles(h2c));
+    assertEquals(CLIENTS * REQUESTS_PER_CLIENT, buffered.length);
+    assertEquals(CLIENTS * REQUESTS_PER_CLIENT, pooled.length);
+    assertEquals(CLIENTS * REQUESTS_PER_CLIENT, h2c.length);
+  }
+
+  private static ClientHttpRequestFactory requestFactory(HttpClient.Version version) {
+    return OAuth2RestClientConfig.requestFactory(version, Duration.ofSeconds(2), Duration.ofSeconds(10), 50, Duration.ofSeconds(30));
+  }
+
+  /**
+   * Runs two rounds (the first one warms up) and returns the latencies of the second round in microseconds.
+   */
+  private long[] run(ClientHttpRequestFactory requestFactory) throws Exception {
+    RestClient restClient = RestClient.builder().baseUrl(baseUrl).requestFactory(requestFactory).build();
+    long[] latencies = null;
+    for (int round = 0; round < 2; round++) {
+      try (ExecutorService clients = Executors.newFixedThreadPool(CLIENTS)) {
+        List<Future<long[]>> results = new ArrayList<>();
+        for (int c = 0; c < CLIENTS; c++) {
+          results.add(clients.submit(() -> {
+            long[] clientLatencies = new long[REQUESTS_PER_CLIENT];
+            for (int i = 0; i < REQUESTS_PER_CLIENT; i++) {
+              long start = System.nanoTime();
+              restClient.get().uri("/library/api/books?page={page}", i).retrieve().body(String.class);
+              clientLatencies[i] = (System.nanoTime() - start) / 1_000;
+            }
+            return clientLatencies;
+          }));
+        }
+        latencies = new long[0];
+        for (Future<long[]> result : results) {
+          long[] clientLatencies = result.get();
+          int offset = latencies.length;
+          latencies = Arrays.copyOf(latencies, offset + clientLatencies.length);
+          System.arraycopy(clientLatencies, 0, latencies, offset, clientLatencies.length);
+        }
+      }
+    }
+    return latencies;
+  }
+
+  private static String percentiles(long[] latencies) {
+    long[] sorted = latencies.clone();
+    Arrays.sort(sorted);
+    return "p50=" + sorted[sorted.length / 2] + "us p99=" + sorted[(int) (sorted.length * 0.99)] + "us";
+  }
+
+  private static String page() {
+    StringBuilder content = new StringBuilder("{\"content\":[");
+    for (int i = 0; i < 20; i++) {
+      content.append(i == 0 ? "" : ",")
+          .append("{\"isbn\":\"978-3-16-1484").append(i).append("\",\"title\":\"Book ").append(i)
+          .append("\",\"author\":\"Author ").append(i).append("\",\"publishedYear\":2000,\"description\":\"")
+          .append("x".repeat(500)).append("\"}");
+    }
+    return content.append("],\"page\":0,\"size\":20,\"totalElements\":1000}").toString();
+  }
+}
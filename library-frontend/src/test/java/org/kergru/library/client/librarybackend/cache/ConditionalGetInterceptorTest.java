@@ -0,0 +1,97 @@
+package org.kergru.library.client.librarybackend.cache;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.absent;
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.okJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kergru.library.model.BookDto;
+import org.kergru.library.model.UserDto;
+import org.springframework.web.client.RestClient;
+
+class ConditionalGetInterceptorTest {
+
+  private static final String BOOK = """
+      {"isbn":"9780132350884","title":"Clean Code","author":"Robert C. Martin"}""";
+
+  private static final String USER = """
+      {"userName":"demo_user_1","firstName":"Demo","lastName":"Eins","email":"demo1@example.test"}""";
+
+  private WireMockServer backend;
+
+  private RestClient restClient;
+
+  @BeforeEach
+  void setUp() {
+    backend = new WireMockServer(options().dynamicPort());
+    backend.start();
+    restClient = RestClient.builder()
+        .baseUrl(backend.baseUrl())
+        .requestInterceptor(new ConditionalGetInterceptor(1024 * 1024))
+        .build();
+  }
+
+  @AfterEach
+  void tearDown() {
+    backend.stop();
+  }
+
+  @Test
+  void expectKeptResponseIsReturnedOnNotModified() {
+    backend.stubFor(get(urlEqualTo("/library/api/books/9780132350884")).withHeader("If-None-Match", absent())
+        .willReturn(okJson(BOOK).withHeader("ETag", "\"v1\"")));
+    backend.stubFor(get(urlEqualTo("/library/api/books/9780132350884")).withHeader("If-None-Match", equalTo("\"v1\""))
+        .willReturn(aResponse().withStatus(304).withHeader("ETag", "\"v1\"")));
+
+    BookDto first = getBook();
+    BookDto second = getBook();
+
+    assertEquals("Clean Code", first.title());
+    assertEquals(first, second);
+    backend.verify(1, getRequestedFor(urlEqualTo("/library/api/books/9780132350884")).withHeader("If-None-Match", equalTo("\"v1\"")));
+  }
+
+  @Test
+  void expectChangedResponseReplacesKeptResponse() {
+    backend.stubFor(get(urlEqualTo("/library/api/books/9780132350884")).withHeader("If-None-Match", absent())
+        .willReturn(okJson(BOOK).withHeader("ETag", "\"v1\"")));
+    backend.stubFor(get(urlEqualTo("/library/api/books/9780132350884")).withHeader("If-None-Match", equalTo("\"v1\""))
+        .willReturn(okJson(BOOK.replace("Clean Code", "Clean Code 2nd")).withHeader("ETag", "\"v2\"")));
+
+    getBook();
+    assertEquals("Clean Code 2nd", getBook().title());
+  }
+
+  @Test
+  void expectResponseWithoutETagIsNotKept() {
+    backend.stubFor(get(urlEqualTo("/library/api/books/9780132350884")).willReturn(okJson(BOOK)));
+
+    getBook();
+    getBook();
+
+    backend.verify(2, getRequestedFor(urlEqualTo("/library/api/books/9780132350884")).withoutHeader("If-None-Match"));
+  }
+
+  @Test
+  void expectResponsesOutsideTheBookEndpointsAreNotKept() {
+    backend.stubFor(get(urlEqualTo("/library/api/users/demo_user_1")).willReturn(okJson(USER).withHeader("ETag", "\"v1\"")));
+
+    restClient.get().uri("/library/api/users/{userName}", "demo_user_1").retrieve().body(UserDto.class);
+    restClient.get().uri("/library/api/users/{userName}", "demo_user_1").retrieve().body(UserDto.class);
+
+    backend.verify(2, getRequestedFor(urlEqualTo("/library/api/users/demo_user_1")).withoutHeader("If-None-Match"));
+  }
+
+  private BookDto getBook() {
+    return restClient.get().uri("/library/api/books/{isbn}", "9780132350884").retrieve().body(BookDto.class);
+  }
+}
@@ -0,0 +1,119 @@
+package org.kergru.library.service;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kergru.library.client.librarybackend.BackgroundCalls;
+import org.kergru.library.client.librarybackend.BackgroundCalls.AccessToken;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+class FanOutTest {
+
+  private final BackgroundCalls backgroundCalls = mock(BackgroundCalls.class);
+
+  private final FanOut fanOut = new FanOut(backgroundCalls, Duration.ofSeconds(2));
+
+  @BeforeEach
+  void setUp() {
+    when(backgroundCalls.currentUserToken()).thenReturn(new AccessToken("token"));
+  }
+
+  @AfterEach
+  void tearDown() {
+    SecurityContextHolder.clearContext();
+    RequestContextHolder.resetRequestAttributes();
+  }
+
+  @Test
+  void expectForksRunConcurrently() {
+    CountDownLatch bothStarted = new CountDownLatch(2);
+    try (FanOut.Scope scope = fanOut.open()) {
+      Supplier<Boolean> first = scope.fork(() -> awaitOther(bothStarted));
+      Supplier<Boolean> second = scope.fork(() -> awaitOther(bothStarted));
+      scope.join();
+
+      assertTrue(first.get());
+      assertTrue(second.get());
+    }
+  }
+
+  @Test
+  void expectFailureCancelsOtherForks() throws InterruptedException {
+    IllegalStateException failure = new IllegalStateException("backend down");
+    CountDownLatch interrupted = new CountDownLatch(1);
+    try (FanOut.Scope scope = fanOut.open()) {
+      scope.fork(() -> sleepUntilInterrupted(interrupted));
+      scope.fork(() -> {
+        throw failure;
+      });
+
+      assertSame(failure, assertThrows(IllegalStateException.class, scope::join));
+    }
+    assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void expectDeadlineCancelsForks() throws InterruptedException {
+    CountDownLatch interrupted = new CountDownLatch(1);
+    long start = System.nanoTime();
+    try (FanOut.Scope scope = new FanOut(backgroundCalls, Duration.ofMillis(100)).open()) {
+      scope.fork(() -> sleepUntilInterrupted(interrupted));
+
+      assertThrows(ResourceAccessException.class, scope::join);
+    }
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void expectForksDontSeeRequestAndSecurityContext() {
+    SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("demo_user_1", null));
+    RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+    try (FanOut.Scope scope = fanOut.open()) {
+      Supplier<SecurityContext> securityContext = scope.fork(SecurityContextHolder::getContext);
+      Supplier<RequestAttributes> requestAttributes = scope.fork(RequestContextHolder::getRequestAttributes);
+      scope.join();
+
+      assertNull(securityContext.get().getAuthentication());
+      assertNull(requestAttributes.get());
+    }
+  }
+
+  private static boolean awaitOther(CountDownLatch bothStarted) {
+    bothStarted.countDown();
+    try {
+      return bothStarted.await(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private static Void sleepUntilInterrupted(CountDownLatch interrupted) {
+    try {
+      Thread.sleep(Duration.ofSeconds(10));
+    } catch (InterruptedException e) {
+      interrupted.countDown();
+    }
+    return null;
+  }
+}
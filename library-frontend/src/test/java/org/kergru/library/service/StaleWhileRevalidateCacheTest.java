@@ -0,0 +1,103 @@
+package org.kergru.library.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class StaleWhileRevalidateCacheTest {
+
+  private static final Duration TTL = Duration.ofMillis(50);
+
+  private SimpleMeterRegistry meterRegistry;
+
+  private StaleWhileRevalidateCache<String, String> cache;
+
+  private final AtomicInteger loads = new AtomicInteger();
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    cache = new StaleWhileRevalidateCache<>("books", TTL, Duration.ofMinutes(1), 100, UnaryOperator.identity(), meterRegistry);
+  }
+
+  @Test
+  void expectFreshEntryIsServedFromCache() {
+    assertEquals("v1", cache.get("isbn", () -> load("v1")));
+    assertEquals("v1", cache.get("isbn", () -> load("v2")));
+
+    assertEquals(1, loads.get());
+    assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "books").tag("result", "hit").functionCounter().count());
+    assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "books").tag("result", "miss").functionCounter().count());
+  }
+
+  @Test
+  void expectStaleEntryIsServedWhileRefreshing() throws Exception {
+    cache.get("isbn", () -> load("v1"));
+    Thread.sleep(TTL.toMillis() * 2);
+
+    CountDownLatch backendSlow = new CountDownLatch(1);
+    CountDownLatch refreshed = new CountDownLatch(1);
+    String served = cache.get("isbn", () -> {
+      await(backendSlow);
+      refreshed.countDown();
+      return load("v2");
+    });
+    assertEquals("v1", served);
+    assertEquals(1.0, meterRegistry.get("library.cache.stale").counter().count());
+
+    backendSlow.countDown();
+    refreshed.await(5, TimeUnit.SECONDS);
+    awaitRefresh("success");
+    assertEquals("v2", cache.get("isbn", () -> load("v3")));
+  }
+
+  @Test
+  void expectStaleEntryIsKeptIfRefreshFails() throws Exception {
+    cache.get("isbn", () -> load("v1"));
+    Thread.sleep(TTL.toMillis() * 2);
+
+    assertEquals("v1", cache.get("isbn", () -> {
+      throw new IllegalStateException("backend down");
+    }));
+    awaitRefresh("failure");
+
+    assertEquals("v1", cache.get("isbn", () -> load("v2")));
+  }
+
+  @Test
+  void expectLoadIsNotStoredIfInvalidatedMeanwhile() {
+    cache.get("isbn", () -> {
+      cache.invalidateAll(); // e.g. the book has been borrowed while loading
+      return load("v1");
+    });
+
+    assertEquals("v2", cache.get("isbn", () -> load("v2")));
+  }
+
+  private String load(String value) {
+    loads.incrementAndGet();
+    return value;
+  }
+
+  private void awaitRefresh(String outcome) throws InterruptedException {
+    for (int i = 0; i < 100 && meterRegistry.get("library.cache.refresh").tag("outcome", outcome).counter().count() == 0; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(1.0, meterRegistry.get("library.cache.refresh").tag("outcome", outcome).counter().count());
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
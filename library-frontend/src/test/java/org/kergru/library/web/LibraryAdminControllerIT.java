@@ -71,4 +71,17 @@ public class LibraryAdminControllerIT {
         .andExpect(status().isForbidden())
         .andExpect(forwardedUrl("/error/403"));
   }
+
+  @Test
+  void expectHealthIsPublicButMetricsNeedRoleLibrarian() throws Exception {
+
+    mockMvc.perform(get("/actuator/health"))
+        .andExpect(status().isOk());
+    mockMvc.perform(get("/actuator/metrics")
+            .with(oauth2Login().oauth2User(mockOidcUser("demo_user_1"))))
+        .andExpect(status().isForbidden());
+    mockMvc.perform(get("/actuator/metrics")
+            .with(oauth2Login().oauth2User(mockOidcUserLibrarian("librarian"))))
+        .andExpect(status().isOk());
+  }
 }
@@ -14,6 +14,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.util.List;
 import org.junit.jupiter.api.Test;
 import org.kergru.library.MockOAuth2Config;
 import org.kergru.library.client.keycloak.KeycloakAdminClient;
@@ -69,6 +70,20 @@ class LibraryApiRestControllerIT {
         .andExpect(status().isConflict());
   }
 
+  @Test
+  void expectBorrowBooksReturnsResultPerIsbn() throws Exception {
+    mockMvc.perform(post("/library/rest/me/borrowBooks")
+            .with(oauth2Login().oauth2User(mockOidcUser("demo_user_1")))
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsString(List.of("success-isbn", "conflict-isbn")))
+            .with(csrf()) //send csrf token
+        )
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$[0].status").value("BORROWED"))
+        .andExpect(jsonPath("$[0].loan.id").value(1))
+        .andExpect(jsonPath("$[1].status").value("ALREADY_BORROWED"));
+  }
+
   @Test
   void expectReturnBookReturnsOk() throws Exception {
     mockMvc.perform(post("/library/rest/me/returnBook/1")
@@ -1,9 +1,18 @@
 package org.kergru.library.web;
 
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.lessThanOrExactly;
+import static com.github.tomakehurst.wiremock.client.WireMock.resetAllRequests;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
 import static org.hamcrest.Matchers.containsString;
 import static org.kergru.library.util.JwtTestUtils.mockOidcUser;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.oauth2Login;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -40,6 +49,16 @@ public class LibraryControllerIT {
         .andExpect(content().string(containsString("The Great Gatsby")));
   }
 
+  @Test
+  void expectSearchBooksWithCursorLinksNextCursor() throws Exception {
+    mockMvc.perform(get("/library/ui/books")
+            .queryParam("cursor", "dGl0bGU6MTAwMTpDbGVhbiBDb2Rl")
+            .with(oauth2Login().oauth2User(mockOidcUser("demo_user_1"))))
+        .andExpect(status().isOk())
+        .andExpect(content().string(containsString("To Kill a Mockingbird")))
+        .andExpect(content().string(containsString("cursor=dGl0bGU6Njc4OTA6VG8gS2lsbCBhIE1vY2tpbmdiaXJk")));
+  }
+
   @Test
   void expectGetBookByIsbnReturnsBook() throws Exception {
     mockMvc.perform(get("/library/ui/books/12345")
@@ -48,12 +67,74 @@ public class LibraryControllerIT {
         .andExpect(content().string(containsString("The Great Gatsby")));
   }
 
+  @Test
+  void expectRepeatedBookIsServedFromCache() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      mockMvc.perform(get("/library/ui/books/12345")
+              .with(oauth2Login().oauth2User(mockOidcUser("demo_user_1"))))
+          .andExpect(status().isOk());
+    }
+
+    verify(lessThanOrExactly(1), getRequestedFor(urlEqualTo("/library/api/books/12345")));
+  }
+
+  @Test
+  void expectSearchStringIsSentAsEnteredAndCachedIgnoringCase() throws Exception {
+    resetAllRequests();
+    for (String searchString : new String[] {" Great  Gatsby ", "great  GATSBY"}) {
+      mockMvc.perform(get("/library/ui/books")
+              .queryParam("searchString", searchString)
+              .with(oauth2Login().oauth2User(mockOidcUser("demo_user_1"))))
+          .andExpect(status().isOk())
+          .andExpect(content().string(containsString("The Great Gatsby")));
+    }
+
+    // inner whitespace is part of the substring search, only the case is ignored by the cache
+    verify(1, getRequestedFor(urlPathEqualTo("/library/api/books")).withQueryParam("searchString", equalTo("Great  Gatsby")));
+  }
+
+  @Test
+  void expectBorrowInvalidatesCachedSearches() throws Exception {
+    mockMvc.perform(get("/library/ui/books")
+            .with(oauth2Login().oauth2User(mockOidcUser("demo_user_1"))))
+        .andExpect(status().isOk());
+    resetAllRequests();
+
+    mockMvc.perform(post("/library/rest/me/borrowBook/success-isbn")
+            .with(oauth2Login().oauth2User(mockOidcUser("demo_user_1")))
+            .with(csrf()))
+        .andExpect(status().isOk());
+    mockMvc.perform(get("/library/ui/books")
+            .with(oauth2Login().oauth2User(mockOidcUser("demo_user_1"))))
+        .andExpect(status().isOk());
+
+    verify(1, getRequestedFor(urlEqualTo("/library/api/books?page=0&size=5&sort=title&view=SUMMARY&total=CACHED")));
+  }
+
   @Test
   void expectGetMeReturnsUser() throws Exception {
     mockMvc.perform(get("/library/ui/me")
             .with(oauth2Login().oauth2User(mockOidcUser("demo_user_1"))))
         .andExpect(status().isOk())
         .andExpect(content().string(containsString("demo_user_1")))
-        .andExpect(content().string(containsString("The Great Gatsby")));
+        .andExpect(content().string(containsString("The Great Gatsby")))
+        .andExpect(content().string(containsString("Verlauf laden")));
+
+    // user and loans are loaded concurrently, each with the token of the user
+    verify(getRequestedFor(urlEqualTo("/library/api/users/demo_user_1"))
+        .withHeader("Authorization", equalTo("Bearer access-token")));
+    verify(getRequestedFor(urlPathEqualTo("/library/api/users/demo_user_1/loans/history"))
+        .withHeader("Authorization", equalTo("Bearer access-token")));
+  }
+
+  @Test
+  void expectGetMeWithHistoryPageReturnsReturnedLoans() throws Exception {
+    mockMvc.perform(get("/library/ui/me")
+            .queryParam("historyPage", "1")
+            .with(oauth2Login().oauth2User(mockOidcUser("demo_user_1"))))
+        .andExpect(status().isOk())
+        .andExpect(content().string(containsString("The Great Gatsby")))
+        .andExpect(content().string(containsString("To Kill a Mockingbird")))
+        .andExpect(content().string(containsString("2 / 2")));
   }
 }